@@ -0,0 +1,92 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// IndexStore.updateIndex and lookupIndex on an in-memory store, alone and with three threads
+// reading postings while one keeps adding documents.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexStoreJmhBenchmark {
+    @Param({ "100000" })
+    public int documents;
+
+    private SyntheticCorpus corpus;
+    private IndexStore store;
+    private final AtomicLong nextDocument = new AtomicLong();
+    private List<Map<String, Long>> newDocuments;
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        public final Random random = new Random(Thread.currentThread().threadId());
+    }
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        corpus = new SyntheticCorpus(50000, 50);
+        store = new IndexStore();
+        List<IndexRequest> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            batch.add(new IndexRequest(1, "/bench/doc-" + i, corpus.document(i)));
+            if (batch.size() == 256) {
+                store.updateIndexBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.updateIndexBatch(batch);
+        nextDocument.set(documents);
+        // Generated up front so that updates measure the index, not the corpus
+        newDocuments = new ArrayList<>(4096);
+        for (int i = 0; i < 4096; i++) {
+            newDocuments.add(corpus.document(documents + i));
+        }
+    }
+
+    @Benchmark
+    @Group("lookup")
+    public long lookup(ThreadRandom state) {
+        return scan(store.lookupIndex(corpus.sampleTerm(state.random)));
+    }
+
+    @Benchmark
+    @Group("update")
+    public void update() {
+        addDocument();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public long contendedLookup(ThreadRandom state) {
+        return scan(store.lookupIndex(corpus.sampleTerm(state.random)));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedUpdate() {
+        addDocument();
+    }
+
+    private void addDocument() {
+        long number = nextDocument.getAndIncrement();
+        long documentNumber = store.putDocument("/bench/new-" + number, 2);
+        store.updateIndex(documentNumber, newDocuments.get((int) (number % newDocuments.size())));
+    }
+
+    // Reads every posting, as an OR query would
+    private static long scan(PostingIterator postings) {
+        long sum = 0;
+        while (postings.next() != PostingIterator.NO_MORE_DOCUMENTS) {
+            sum += postings.frequency();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,88 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Encoding and decoding the messages on the indexing and search paths, binary and text.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolJmhBenchmark {
+    private Map<String, Long> wordFrequencies;
+    private byte[] binaryIndexRequest;
+    private String textIndexRequest;
+    private List<IndexRequest> batch;
+    private ArrayList<ClientProcessingEngine.DocPathFreqPair> results;
+    private byte[] binarySearchReply;
+    private String textSearchReply;
+
+    @Setup(Level.Trial)
+    public void encodeInputs() {
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 500);
+        wordFrequencies = corpus.document(0);
+        binaryIndexRequest = BinaryProtocol.encodeIndexRequest(1, "/data/folder/document-0.txt", wordFrequencies);
+        textIndexRequest = TextProtocol.encodeIndexRequest(1, "/data/folder/document-0.txt", wordFrequencies);
+
+        batch = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            batch.add(new IndexRequest(1, "/data/folder/document-" + i + ".txt", corpus.document(i)));
+        }
+
+        results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(new ClientProcessingEngine.DocPathFreqPair("/data/folder/document-" + i + ".txt", 1000 - i, 1));
+        }
+        binarySearchReply = BinaryProtocol.encodeSearchReply(results);
+        textSearchReply = TextProtocol.encodeSearchReply(results);
+    }
+
+    @Benchmark
+    public byte[] encodeIndexRequestBinary() {
+        return BinaryProtocol.encodeIndexRequest(1, "/data/folder/document-0.txt", wordFrequencies);
+    }
+
+    @Benchmark
+    public IndexRequest decodeIndexRequestBinary() {
+        return BinaryProtocol.decodeIndexRequest(binaryIndexRequest);
+    }
+
+    @Benchmark
+    public String encodeIndexRequestText() {
+        return TextProtocol.encodeIndexRequest(1, "/data/folder/document-0.txt", wordFrequencies);
+    }
+
+    @Benchmark
+    public IndexRequest decodeIndexRequestText() {
+        return TextProtocol.decodeIndexRequest(textIndexRequest);
+    }
+
+    // The record a batch is written to the log and the change stream as
+    @Benchmark
+    public byte[] encodeBatchRecord() {
+        return WriteAheadLog.encodeBatch(batch);
+    }
+
+    @Benchmark
+    public byte[] encodeSearchReplyBinary() {
+        return BinaryProtocol.encodeSearchReply(results);
+    }
+
+    @Benchmark
+    public ArrayList<ClientProcessingEngine.DocPathFreqPair> decodeSearchReplyBinary() {
+        return BinaryProtocol.decodeSearchReply(binarySearchReply);
+    }
+
+    @Benchmark
+    public String encodeSearchReplyText() {
+        return TextProtocol.encodeSearchReply(results);
+    }
+
+    @Benchmark
+    public ArrayList<ClientProcessingEngine.DocPathFreqPair> decodeSearchReplyText() {
+        return TextProtocol.decodeSearchReply(textSearchReply);
+    }
+}
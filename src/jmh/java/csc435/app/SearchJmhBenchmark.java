@@ -0,0 +1,88 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.zeromq.ZMsg;
+import org.openjdk.jmh.annotations.*;
+
+// A search request through RequestHandler, without the cache: query evaluation, collecting
+// the top K and building the reply. Also the client's merge of several shards' results.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchJmhBenchmark {
+    @Param({ "200000" })
+    public int documents;
+
+    // "rare" ANDs two uncommon terms; "common" ORs the three most frequent ones
+    @Param({ "rare", "common" })
+    public String query;
+
+    @Param({ "10", "1000" })
+    public int maxResults;
+
+    private IndexStore store;
+    private byte[] searchRequest;
+    private List<ArrayList<ClientProcessingEngine.DocPathFreqPair>> shardResults;
+
+    @State(Scope.Thread)
+    public static class Handler {
+        RequestHandler handler;
+
+        @Setup(Level.Trial)
+        public void create(SearchJmhBenchmark benchmark) {
+            handler = new RequestHandler(benchmark.store, null, false);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 50);
+        store = new IndexStore();
+        List<IndexRequest> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            batch.add(new IndexRequest(1, "/bench/doc-" + i, corpus.document(i)));
+            if (batch.size() == 256) {
+                store.updateIndexBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.updateIndexBatch(batch);
+
+        SearchQuery searchQuery = query.equals("rare")
+                ? new SearchQuery(List.of(corpus.term(150), corpus.term(1150)), SearchQuery.Operator.AND, maxResults)
+                : new SearchQuery(List.of(corpus.term(0), corpus.term(1), corpus.term(2)), SearchQuery.Operator.OR, maxResults);
+        searchRequest = BinaryProtocol.encodeSearchRequest(searchQuery);
+
+        // Four shards' top K lists, as the client receives them
+        Random random = new Random(3);
+        shardResults = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>();
+            for (int i = 0; i < maxResults; i++) {
+                results.add(new ClientProcessingEngine.DocPathFreqPair("/shard-" + shard + "/doc-" + i, 1 + random.nextInt(20), 1));
+            }
+            shardResults.add(results);
+        }
+    }
+
+    @Benchmark
+    public ZMsg handleSearch(Handler state) {
+        ZMsg request = new ZMsg();
+        request.add(BinaryProtocol.header(BinaryProtocol.SEARCH_REQUEST));
+        request.add(searchRequest);
+        return state.handler.handle(request);
+    }
+
+    @Benchmark
+    public ArrayList<ClientProcessingEngine.DocPathFreqPair> mergeShards() {
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>();
+        for (ArrayList<ClientProcessingEngine.DocPathFreqPair> shard : shardResults) {
+            results.addAll(shard);
+        }
+        return ClientProcessingEngine.mergeShardResults(results, maxResults);
+    }
+}
@@ -0,0 +1,48 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The tokenizer the client runs on every file it indexes, on Zipfian text held in memory and
+// on the same text read from a file. Scores are per call; bytes per second is size / score.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerJmhBenchmark {
+    // Bytes per document; files from 1 MB up are memory-mapped
+    @Param({ "4096", "65536", "4194304" })
+    public int size;
+
+    private final StreamingTokenizer tokenizer = new StreamingTokenizer();
+    private byte[] text;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        text = new SyntheticCorpus(200000, 1).text(0, size);
+        file = Files.createTempFile("tokenizer-jmh", ".txt");
+        Files.write(file, text);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Map<String, Long> tokenizeBytes() {
+        return tokenizer.tokenize(text);
+    }
+
+    @Benchmark
+    public Map<String, Long> tokenizeFile() throws IOException {
+        return tokenizer.tokenize(file);
+    }
+}
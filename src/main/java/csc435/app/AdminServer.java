@@ -0,0 +1,58 @@
+package csc435.app;
+
+import java.util.function.Supplier;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// Answers every request on the admin port with the server's stats as JSON, so that monitoring
+// can poll a running server, e.g. with a REQ socket sending "STATS".
+public class AdminServer implements Runnable {
+    private final ZContext context;
+    private final int adminPort;
+    private final Supplier<String> stats;
+
+    public AdminServer(ZContext context, int adminPort, Supplier<String> stats) {
+        this.context = context;
+        this.adminPort = adminPort;
+        this.stats = stats;
+    }
+
+    @Override
+    public void run() {
+        ZMQ.Socket adminSocket = context.createSocket(SocketType.REP);
+        // Any message on the control socket tells the admin server to stop
+        ZMQ.Socket controlSocket = context.createSocket(SocketType.SUB);
+        try {
+            adminSocket.bind("tcp://*:" + adminPort);
+            controlSocket.connect(ServerProcessingEngine.CONTROL_ENDPOINT);
+            controlSocket.subscribe(ZMQ.SUBSCRIPTION_ALL);
+
+            ZMQ.Poller poller = context.createPoller(2);
+            int requestIndex = poller.register(adminSocket, ZMQ.Poller.POLLIN);
+            int controlIndex = poller.register(controlSocket, ZMQ.Poller.POLLIN);
+            while (!Thread.currentThread().isInterrupted()) {
+                if (poller.poll(-1) < 0 || poller.pollin(controlIndex)) {
+                    break;
+                }
+                if (poller.pollin(requestIndex)) {
+                    ZMsg request = ZMsg.recvMsg(adminSocket);
+                    if (request != null) {
+                        request.destroy();
+                        adminSocket.send(stats.get());
+                    }
+                }
+            }
+            poller.close();
+        } catch (org.zeromq.ZMQException e) {
+            // Thrown if the port is taken or the context is closed while waiting
+            if (e.getErrorCode() != ZMQ.Error.ETERM.getCode()) {
+                System.err.println("Admin server error: " + e.getMessage());
+            }
+        } finally {
+            controlSocket.close();
+            adminSocket.close();
+        }
+    }
+}
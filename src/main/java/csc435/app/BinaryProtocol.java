@@ -0,0 +1,444 @@
+package csc435.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Versioned binary wire format sent as ZMQ multipart messages.
+// Frame 0 is a 3-byte header (magic, version, message type); frame 1, when present,
+// is the body: varint integers and varint-length-prefixed UTF-8 strings.
+public class BinaryProtocol {
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    public static final byte REGISTER_REQUEST = 1;
+    public static final byte REGISTER_REPLY = 2;
+    public static final byte INDEX_REQUEST = 3;
+    public static final byte INDEX_REPLY = 4;
+    public static final byte SEARCH_REQUEST = 5;
+    public static final byte SEARCH_REPLY = 6;
+    public static final byte QUIT_REQUEST = 7;
+    public static final byte QUIT_REPLY = 8;
+    public static final byte ERROR_REPLY = 9;
+    public static final byte INDEX_BATCH_REQUEST = 10;
+    public static final byte INDEX_BATCH_REPLY = 11;
+    public static final byte DELETE_REQUEST = 12;
+    public static final byte DELETE_REPLY = 13;
+    public static final byte SNAPSHOT_REQUEST = 14;
+    public static final byte SNAPSHOT_REPLY = 15;
+    public static final byte BUSY_REPLY = 16;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    // Text messages always start with an ASCII letter, so the magic byte tells the formats apart
+    public static boolean isBinary(byte[] firstFrame) {
+        return firstFrame.length == 3 && firstFrame[0] == MAGIC;
+    }
+
+    public static byte[] header(byte messageType) {
+        return new byte[] { MAGIC, VERSION, messageType };
+    }
+
+    public static byte messageType(byte[] header) {
+        if (!isBinary(header)) {
+            throw new IllegalArgumentException("Not a binary protocol header");
+        }
+        if (header[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported protocol version " + header[1]);
+        }
+        return header[2];
+    }
+
+    public static byte[] encodeIndexRequest(long clientID, String documentPath, Map<String, Long> wordFrequencies) {
+        Encoder encoder = new Encoder(32 + documentPath.length() + wordFrequencies.size() * 12);
+        encoder.writeVarLong(clientID);
+        encoder.writeString(documentPath);
+        encoder.writeVarLong(wordFrequencies.size());
+        for (Map.Entry<String, Long> entry : wordFrequencies.entrySet()) {
+            encoder.writeString(entry.getKey());
+            encoder.writeVarLong(entry.getValue());
+        }
+        return encoder.toByteArray();
+    }
+
+    public static IndexRequest decodeIndexRequest(byte[] body) {
+        Decoder decoder = new Decoder(body);
+        long clientID = decoder.readVarLong();
+        String documentPath = decoder.readString();
+        int numTerms = decoder.readLength();
+        Map<String, Long> wordFrequencies = new HashMap<>(numTerms * 4 / 3 + 1);
+        for (int i = 0; i < numTerms; i++) {
+            String term = decoder.readString();
+            wordFrequencies.put(term, decoder.readVarLong());
+        }
+        return new IndexRequest(clientID, documentPath, wordFrequencies);
+    }
+
+    // An INDEX_BATCH_REQUEST is the header, this batch ID frame, then one
+    // encodeIndexRequest frame per document
+    public static byte[] encodeBatchId(long batchId) {
+        return encodeVarLong(batchId);
+    }
+
+    public static byte[] encodeBatchReply(long batchId, byte status) {
+        Encoder encoder = new Encoder(11);
+        encoder.writeVarLong(batchId);
+        encoder.writeByte(status);
+        return encoder.toByteArray();
+    }
+
+    // Returns the batch ID; throws if the server rejected the batch
+    public static long decodeBatchReply(byte[] body) {
+        Decoder decoder = new Decoder(body);
+        long batchId = decoder.readVarLong();
+        if (decoder.readByte() != STATUS_OK) {
+            throw new IllegalStateException("Server rejected index batch " + batchId);
+        }
+        return batchId;
+    }
+
+    // Sent instead of the reply when the server's queue for the request is full. The body is
+    // the batch ID of a rejected INDEX_BATCH_REQUEST (0 for other requests) and how many
+    // milliseconds the client should wait before sending the request again.
+    public static byte[] encodeBusyReply(long batchId, long retryAfterMillis) {
+        Encoder encoder = new Encoder(20);
+        encoder.writeVarLong(batchId);
+        encoder.writeVarLong(retryAfterMillis);
+        return encoder.toByteArray();
+    }
+
+    // Body: term count, terms, then the operator (0 = AND, 1 = OR) and the number of results.
+    // Older requests end after the terms or the operator: they are OR queries or return 10 results.
+    public static byte[] encodeSearchRequest(SearchQuery query) {
+        Encoder encoder = new Encoder(8 + query.terms.size() * 12);
+        encoder.writeVarLong(query.terms.size());
+        for (String term : query.terms) {
+            encoder.writeString(term);
+        }
+        encoder.writeByte(query.operator.ordinal());
+        encoder.writeVarLong(query.maxResults);
+        return encoder.toByteArray();
+    }
+
+    public static SearchQuery decodeSearchRequest(byte[] body) {
+        Decoder decoder = new Decoder(body);
+        int numTerms = decoder.readLength();
+        List<String> terms = new ArrayList<>(numTerms);
+        for (int i = 0; i < numTerms; i++) {
+            terms.add(decoder.readString());
+        }
+        SearchQuery.Operator operator = SearchQuery.Operator.OR;
+        if (decoder.hasRemaining()) {
+            int ordinal = decoder.readByte();
+            if (ordinal < 0 || ordinal >= SearchQuery.Operator.values().length) {
+                throw new IllegalArgumentException("Unknown search operator " + ordinal);
+            }
+            operator = SearchQuery.Operator.values()[ordinal];
+        }
+        int maxResults = SearchQuery.DEFAULT_MAX_RESULTS;
+        if (decoder.hasRemaining()) {
+            maxResults = (int) Math.min(decoder.readVarLong(), SearchQuery.MAX_RESULTS_LIMIT);
+        }
+        return new SearchQuery(terms, operator, maxResults);
+    }
+
+    public static byte[] encodeSearchReply(List<ClientProcessingEngine.DocPathFreqPair> results) {
+        Encoder encoder = new Encoder(8 + results.size() * 64);
+        encoder.writeVarLong(results.size());
+        for (ClientProcessingEngine.DocPathFreqPair result : results) {
+            encoder.writeSignedVarLong(result.docOwner);
+            encoder.writeString(result.documentPath);
+            encoder.writeVarLong(result.wordFrequency);
+        }
+        return encoder.toByteArray();
+    }
+
+    public static ArrayList<ClientProcessingEngine.DocPathFreqPair> decodeSearchReply(byte[] body) {
+        Decoder decoder = new Decoder(body);
+        int numResults = decoder.readLength();
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>(numResults);
+        for (int i = 0; i < numResults; i++) {
+            long docOwner = decoder.readSignedVarLong();
+            String documentPath = decoder.readString();
+            long frequency = decoder.readVarLong();
+            results.add(new ClientProcessingEngine.DocPathFreqPair(documentPath, frequency, docOwner));
+        }
+        return results;
+    }
+
+    // The client ID, then the server's index ID; clients keep one manifest of sent files per index
+    public static byte[] encodeRegisterReply(long clientID, String indexID) {
+        Encoder encoder = new Encoder(16 + indexID.length());
+        encoder.writeVarLong(clientID);
+        encoder.writeString(indexID);
+        return encoder.toByteArray();
+    }
+
+    // Paths of the documents to remove from the index
+    public static byte[] encodeDeleteRequest(List<String> documentPaths) {
+        Encoder encoder = new Encoder(16 + documentPaths.size() * 64);
+        encoder.writeVarLong(documentPaths.size());
+        for (String documentPath : documentPaths) {
+            encoder.writeString(documentPath);
+        }
+        return encoder.toByteArray();
+    }
+
+    public static List<String> decodeDeleteRequest(byte[] body) {
+        Decoder decoder = new Decoder(body);
+        int numPaths = decoder.readLength();
+        List<String> documentPaths = new ArrayList<>(numPaths);
+        for (int i = 0; i < numPaths; i++) {
+            documentPaths.add(decoder.readString());
+        }
+        return documentPaths;
+    }
+
+    // A SNAPSHOT_REPLY is the header, a frame with the change stream ID and the sequence number
+    // the snapshot includes, then frames of entries: 1 = a term and its postings as document
+    // number deltas (the first one plus one) with frequencies, ended by a 0 delta; 2 = a document.
+    // Frames are cut at about a megabyte so that no single buffer holds the whole index.
+    public static byte[] encodeSnapshotInfo(String streamID, long sequence) {
+        Encoder encoder = new Encoder(16 + streamID.length());
+        encoder.writeString(streamID);
+        encoder.writeVarLong(sequence);
+        return encoder.toByteArray();
+    }
+
+    // Encodes one chunk of a snapshot, as one frame of whole entries
+    public static class SnapshotEncoder implements IndexStore.SnapshotConsumer {
+        private static final int CHUNK_SIZE = 1 << 20;
+        private static final int POSTINGS_ENTRY = 1;
+        private static final int DOCUMENT_ENTRY = 2;
+
+        private final Encoder encoder = new Encoder(CHUNK_SIZE + 4096);
+
+        @Override
+        public void postings(String term, PostingIterator postings) {
+            encoder.writeByte(POSTINGS_ENTRY);
+            encoder.writeString(term);
+            int previous = -1;
+            for (int doc = postings.documentNumber(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = postings.next()) {
+                encoder.writeVarLong(doc - previous);
+                encoder.writeVarLong(postings.frequency());
+                previous = doc;
+            }
+            encoder.writeVarLong(0);
+        }
+
+        @Override
+        public void document(int documentNumber, long ownerID, String documentPath) {
+            encoder.writeByte(DOCUMENT_ENTRY);
+            encoder.writeVarLong(documentNumber);
+            encoder.writeSignedVarLong(ownerID);
+            encoder.writeString(documentPath);
+        }
+
+        // Whether the chunk reached its size; one large posting list may take it past that
+        public boolean isFull() {
+            return encoder.size() >= CHUNK_SIZE;
+        }
+
+        public byte[] toByteArray() {
+            return encoder.toByteArray();
+        }
+    }
+
+    // Feeds every entry of one snapshot frame to the consumer
+    public static void decodeSnapshotFrame(byte[] frame, IndexStore.SnapshotConsumer consumer) {
+        Decoder decoder = new Decoder(frame);
+        int[] documentNumbers = new int[64];
+        int[] frequencies = new int[64];
+        while (decoder.hasRemaining()) {
+            int kind = decoder.readByte();
+            if (kind == SnapshotEncoder.POSTINGS_ENTRY) {
+                String term = decoder.readString();
+                int count = 0;
+                int doc = -1;
+                for (long delta = decoder.readVarLong(); delta != 0; delta = decoder.readVarLong()) {
+                    if (count == documentNumbers.length) {
+                        documentNumbers = Arrays.copyOf(documentNumbers, count * 2);
+                        frequencies = Arrays.copyOf(frequencies, count * 2);
+                    }
+                    doc = Math.toIntExact(doc + delta);
+                    documentNumbers[count] = doc;
+                    frequencies[count] = (int) decoder.readVarLong();
+                    count++;
+                }
+                PostingIterator postings = new PostingList.ArrayPostingIterator(documentNumbers, frequencies, count);
+                if (postings.next() != PostingIterator.NO_MORE_DOCUMENTS) {
+                    consumer.postings(term, postings);
+                }
+            } else if (kind == SnapshotEncoder.DOCUMENT_ENTRY) {
+                int documentNumber = Math.toIntExact(decoder.readVarLong());
+                long ownerID = decoder.readSignedVarLong();
+                consumer.document(documentNumber, ownerID, decoder.readString());
+            } else {
+                throw new IllegalArgumentException("Unknown snapshot entry " + kind);
+            }
+        }
+    }
+
+    public static byte[] encodeVarLong(long value) {
+        Encoder encoder = new Encoder(10);
+        encoder.writeVarLong(value);
+        return encoder.toByteArray();
+    }
+
+    public static long decodeVarLong(byte[] body) {
+        return new Decoder(body).readVarLong();
+    }
+
+    public static byte[] encodeString(String value) {
+        Encoder encoder = new Encoder(value.length() + 5);
+        encoder.writeString(value);
+        return encoder.toByteArray();
+    }
+
+    public static String decodeString(byte[] body) {
+        return new Decoder(body).readString();
+    }
+
+    // Growable byte buffer that writes varints and UTF-8 strings without temporary arrays
+    public static class Encoder {
+        private byte[] buffer;
+        private int position;
+
+        public Encoder(int initialCapacity) {
+            this.buffer = new byte[Math.max(16, initialCapacity)];
+        }
+
+        public void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        public void writeVarLong(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative value for unsigned varint: " + value);
+            }
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        // Zig-zag encoding keeps small negative values (such as an unknown owner of -1) short
+        public void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public void writeString(String value) {
+            int length = value.length();
+            int utf8Length = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    utf8Length += 1;
+                } else if (c < 0x800) {
+                    utf8Length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    utf8Length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    utf8Length += 1; // Unpaired surrogate, replaced with '?' like String.getBytes does
+                } else {
+                    utf8Length += 3;
+                }
+            }
+
+            writeVarLong(utf8Length);
+            ensureCapacity(utf8Length);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        public int size() {
+            return position;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(position + extra, buffer.length * 2));
+            }
+        }
+    }
+
+    public static class Decoder {
+        private final byte[] buffer;
+        private int position;
+
+        public Decoder(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        public int readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated message");
+            }
+            return buffer[position++];
+        }
+
+        public long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        public long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        // Element count or string length, checked against the bytes left in the message
+        public int readLength() {
+            long length = readVarLong();
+            if (length > buffer.length - position) {
+                throw new IllegalArgumentException("Length " + length + " exceeds message size");
+            }
+            return (int) length;
+        }
+
+        public String readString() {
+            int length = readLength();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        public boolean hasRemaining() {
+            return position < buffer.length;
+        }
+    }
+}
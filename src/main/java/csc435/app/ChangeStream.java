@@ -0,0 +1,91 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Numbered sequence of the index updates a primary server has applied, in the write-ahead
+// log's record format. The index store appends to it while holding its update lock; one
+// publisher thread drains it onto the PUB socket, which ZMQ does not allow to be shared.
+// Sequence numbers restart with every server process, so each stream has its own ID.
+// At most MAX_PENDING_BYTES of records wait for the publisher. A change that does not fit is
+// dropped but still numbered, so followers see the gap and load a new snapshot, as they do
+// when the PUB socket drops changes for them.
+public class ChangeStream {
+    static final long MAX_PENDING_BYTES = 64L << 20;
+
+    private final String streamID = UUID.randomUUID().toString();
+    private final LinkedBlockingQueue<Change> pending = new LinkedBlockingQueue<>();
+    private long pendingBytes; // Guarded by this
+    private long sequence;
+    private long droppedChanges;
+    private boolean dropping; // Whether the last change was dropped
+    private volatile boolean closed;
+
+    public static class Change {
+        public final long sequence;
+        public final byte[] record; // Null marks the end of the stream
+
+        Change(long sequence, byte[] record) {
+            this.sequence = sequence;
+            this.record = record;
+        }
+    }
+
+    public String getStreamID() {
+        return streamID;
+    }
+
+    // Sequence number of the last change appended
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    // Changes left out because the publisher fell too far behind
+    public synchronized long getDroppedChanges() {
+        return droppedChanges;
+    }
+
+    public synchronized long append(byte[] record) {
+        if (closed) {
+            return sequence; // Updates after shutdown are not published
+        }
+        sequence++;
+        if (pendingBytes + record.length > MAX_PENDING_BYTES) {
+            if (!dropping) {
+                System.err.println("Change stream publisher is behind; followers will load a new snapshot.");
+            }
+            dropping = true;
+            droppedChanges++;
+            return sequence;
+        }
+        dropping = false;
+        pendingBytes += record.length;
+        pending.add(new Change(sequence, record));
+        return sequence;
+    }
+
+    // Blocks until at least one change is pending and returns all of them. The last change
+    // of the stream has a null record.
+    public List<Change> take() throws InterruptedException {
+        List<Change> changes = new ArrayList<>();
+        changes.add(pending.take());
+        pending.drainTo(changes);
+        long bytes = 0;
+        for (Change change : changes) {
+            bytes += change.record == null ? 0 : change.record.length;
+        }
+        synchronized (this) {
+            pendingBytes -= bytes;
+        }
+        return changes;
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            pending.add(new Change(sequence, null));
+        }
+    }
+}
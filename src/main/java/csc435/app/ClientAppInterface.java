@@ -1,7 +1,6 @@
 package csc435.app;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class ClientAppInterface {
@@ -25,11 +24,25 @@ public class ClientAppInterface {
             }
 
             if (command.length() >= 7 && command.substring(0, 7).compareTo("connect") == 0) {
-                String[] parts = command.split(" ");
-                if (parts.length == 3) {
+                String[] parts = command.split("\\s+");
+                if (parts.length == 3 && !parts[1].contains(":")) {
                     engine.connect(parts[1], parts[2]);
+                } else if (parts.length >= 2 && parts[1].contains(":")) {
+                    // One address per shard, always in the same order
+                    engine.connectShards(Arrays.asList(parts).subList(1, parts.length));
                 } else {
                     System.out.println("Usage: connect <server IP> <server port>");
+                    System.out.println("       connect <IP:port> [<IP:port> ...]");
+                }
+                continue;
+            }
+
+            if (command.length() >= 8 && command.substring(0, 8).compareTo("replicas") == 0) {
+                String[] parts = command.split("\\s+");
+                if (parts.length >= 2) {
+                    engine.connectReplicas(Arrays.asList(parts).subList(1, parts.length));
+                } else {
+                    System.out.println("Usage: replicas <IP:port> [<IP:port> ...]");
                 }
                 continue;
             }
@@ -41,27 +54,59 @@ public class ClientAppInterface {
 
             if (command.length() >= 5 && command.substring(0, 5).compareTo("index") == 0) {
                 String[] parts = command.split(" ", 2);
+                // "--full" sends every file again instead of only the ones changed since the last run
+                boolean fullReindex = parts.length == 2 && parts[1].startsWith("--full ");
+                if (fullReindex) {
+                    parts[1] = parts[1].substring("--full ".length()).trim();
+                }
                 if (parts.length == 2) {
-                    ClientProcessingEngine.IndexResult result = engine.indexFiles(parts[1]);
+                    ClientProcessingEngine.IndexResult result;
+                    try {
+                        result = engine.indexFiles(parts[1], fullReindex);
+                    } catch (IllegalStateException e) {
+                        // Nothing is recorded as sent, so the next run sends the same files again
+                        System.out.println("Indexing failed: " + e.getMessage());
+                        continue;
+                    }
                     System.out.println("Indexing completed in " + result.executionTime
                             + " s, bytes read: " + result.totalBytesRead);
+                    System.out.printf("Documents: %d (%.0f docs/s), batches: %d (%d retried while the server was busy),"
+                            + " peak batches in flight: %d%n",
+                            result.documentsIndexed, result.documentsPerSecond,
+                            result.batchesSent, result.batchesRetried, result.peakBatchesInFlight);
+                    System.out.printf("Unchanged documents skipped: %d, deleted: %d%n",
+                            result.documentsUnchanged, result.documentsDeleted);
                 } else {
-                    System.out.println("Usage: index <folder path>");
+                    System.out.println("Usage: index [--full] <folder path>");
                 }
                 continue;
             }
 
             if (command.length() >= 6 && command.substring(0, 6).compareTo("search") == 0) {
                 String[] parts = command.split(" ", 2);
+                int maxResults = SearchQuery.DEFAULT_MAX_RESULTS;
+                // Optional "-k <count>" before the query selects how many results to return
+                if (parts.length == 2 && parts[1].matches("-k \\d+ .+")) {
+                    String[] options = parts[1].split(" ", 3);
+                    maxResults = Integer.parseInt(options[1]);
+                    parts[1] = options[2];
+                }
                 if (parts.length == 2) {
-                    ArrayList<String> terms = new ArrayList<>(List.of(parts[1].split(" AND ")));
-                    ClientProcessingEngine.SearchResult result = engine.searchFiles(terms);
+                    SearchQuery query;
+                    try {
+                        query = SearchQuery.parse(parts[1], maxResults);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(e.getMessage());
+                        continue;
+                    }
+                    ClientProcessingEngine.SearchResult result = engine.searchFiles(query);
                     System.out.println("Search completed in " + result.executionTime + " s");
                     for (ClientProcessingEngine.DocPathFreqPair doc : result.documentFrequencies) {
                         System.out.println(doc.documentPath + " - Frequency: " + doc.wordFrequency);
                     }
                 } else {
-                    System.out.println("Usage: search <term1 AND term2>");
+                    System.out.println("Usage: search [-k <count>] <term1 AND term2> | search [-k <count>] <term1 OR term2>");
+                    System.out.println("       Terms may use * for any characters and ? for one, as in config*");
                 }
                 continue;
             }
@@ -2,21 +2,42 @@ package csc435.app;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import org.zeromq.SocketType;
+import java.util.zip.CRC32C;
 import org.zeromq.ZContext;
-import org.zeromq.ZMQ;
 
 public class ClientProcessingEngine {
 
     private ZContext context;
-    private ZMQ.Socket requestSocket;
+    // One connection per shard. Documents are assigned to shards by a hash of their path, so
+    // the servers must always be listed in the same order.
+    private List<ServerConnection> servers = new ArrayList<>();
+    // Read-only followers of the server; when there are any, searches go to them in turn
+    private List<ServerConnection> replicas = new ArrayList<>();
+    private int nextReplica;
     private long clientID;
+    private Path manifestDirectory = Paths.get(System.getProperty("user.home"), ".file-retrieval");
+    private boolean useTextProtocol; // Legacy pipe-delimited messages instead of binary frames
+    private int documentsPerBatch = 256;
+    private int maxBatchesInFlight = 8;
+    private IndexBatchSender[] batchSenders;
+    private long documentsIndexed;
+    private boolean crawlComplete; // False if the last crawl missed some directory
+    private int crawlerThreads = Runtime.getRuntime().availableProcessors();
+
+    // Tokenized documents waiting for the sender; bounds client memory when the network is slower than disk
+    private static final int CRAWL_QUEUE_CAPACITY = 1024;
 
     public ClientProcessingEngine() {
+        this(false);
+    }
+
+    public ClientProcessingEngine(boolean useTextProtocol) {
         this.context = new ZContext();
-        this.requestSocket = context.createSocket(SocketType.REQ);
+        this.useTextProtocol = useTextProtocol;
     }
 
     // This inner class now tracks the document's client owner.
@@ -39,10 +60,26 @@ public class ClientProcessingEngine {
     public static class IndexResult {
         public double executionTime;
         public long totalBytesRead;
+        public long documentsIndexed;
+        public double documentsPerSecond;
+        public long batchesSent;
+        public int peakBatchesInFlight;
+        public long batchesRetried; // Sent again because the server's index queue was full
+        public long documentsUnchanged; // Skipped because the server already has their content
+        public long documentsDeleted;
 
         public IndexResult(double executionTime, long totalBytesRead) {
+            this(executionTime, totalBytesRead, 0, 0, 0);
+        }
+
+        public IndexResult(double executionTime, long totalBytesRead, long documentsIndexed,
+                           long batchesSent, int peakBatchesInFlight) {
             this.executionTime = executionTime;
             this.totalBytesRead = totalBytesRead;
+            this.documentsIndexed = documentsIndexed;
+            this.documentsPerSecond = executionTime > 0 ? documentsIndexed / executionTime : 0;
+            this.batchesSent = batchesSent;
+            this.peakBatchesInFlight = peakBatchesInFlight;
         }
     }
 
@@ -57,6 +94,12 @@ public class ClientProcessingEngine {
     }
 
     public IndexResult indexFiles(String folderPath) {
+        return indexFiles(folderPath, false);
+    }
+
+    // Sends the files added or changed since this folder was last indexed into the server's
+    // current index, and deletes the ones removed since; fullReindex sends every file again
+    public IndexResult indexFiles(String folderPath, boolean fullReindex) {
         long totalBytesRead = 0;
         long startTime = System.currentTimeMillis();
 
@@ -66,110 +109,260 @@ public class ClientProcessingEngine {
             return new IndexResult(0, 0);
         }
 
+        // Binary clients pipeline batches over the DEALER socket; text clients send one file per round trip
+        documentsIndexed = 0;
+        batchSenders = null;
+        if (!useTextProtocol) {
+            batchSenders = new IndexBatchSender[servers.size()];
+            for (int shard = 0; shard < servers.size(); shard++) {
+                batchSenders[shard] = servers.get(shard).newBatchSender(clientID, documentsPerBatch, maxBatchesInFlight);
+            }
+        }
+        FileManifest manifest = loadManifest(folder);
+
         // Index all files in folder (recursively)
-        totalBytesRead = traverseAndIndex(folder, totalBytesRead);
+        totalBytesRead = traverseAndIndex(folder, totalBytesRead, manifest, fullReindex);
+
+        long batchesSent = 0;
+        int peakBatchesInFlight = 0;
+        long batchesRetried = 0;
+        if (batchSenders != null) {
+            for (IndexBatchSender batchSender : batchSenders) {
+                batchSender.finish();
+                batchesSent += batchSender.getBatchesSent();
+                batchesRetried += batchSender.getBatchesRetried();
+                peakBatchesInFlight = Math.max(peakBatchesInFlight, batchSender.getPeakBatchesInFlight());
+            }
+            batchSenders = null;
+        }
+
+        long documentsUnchanged = 0;
+        long documentsDeleted = 0;
+        if (manifest != null) {
+            documentsUnchanged = manifest.getSeenCount() - documentsIndexed;
+            // Files in a directory that could not be listed were not seen, but are not gone
+            if (crawlComplete) {
+                List<String> removed = manifest.removeUnseen();
+                deleteDocuments(removed);
+                documentsDeleted = removed.size();
+            } else {
+                System.err.println("WARNING: Not all of " + folderPath + " could be read; no documents were deleted.");
+            }
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                System.err.println("WARNING: Failed to save index manifest: " + e.getMessage());
+            }
+        }
 
         long endTime = System.currentTimeMillis();
-        return new IndexResult((endTime - startTime) / 1000.0, totalBytesRead);
-    }
-
-    private long traverseAndIndex(File folder, long totalBytesRead) {
-        File[] files = folder.listFiles();
-        if (files == null) {
-            return totalBytesRead;
-        }
-
-        for (File file : files) {
-            if (file.isDirectory()) {
-                totalBytesRead = traverseAndIndex(file, totalBytesRead);
-            } else if (file.isFile()) {
-                try {
-                    String content = new String(Files.readAllBytes(file.toPath()));
-                    totalBytesRead += content.length();
-
-                    Map<String, Long> wordFrequencies = new HashMap<>();
-                    for (String word : content.split("[^a-zA-Z0-9_-]+")) {
-                        if (word.length() > 3) {
-                            wordFrequencies.put(word, wordFrequencies.getOrDefault(word, 0L) + 1);
-                        }
-                    }
-
-                    // Format: "INDEX REQUEST|<clientID>|<docPath>|<word1:freq1,word2:freq2,...>"
-                    StringBuilder message = new StringBuilder("INDEX REQUEST|");
-                    message.append(clientID).append("|")
-                           .append(file.getAbsolutePath()).append("|");
-                    for (Map.Entry<String, Long> entry : wordFrequencies.entrySet()) {
-                        message.append(entry.getKey()).append(":").append(entry.getValue()).append(",");
-                    }
-                    if (message.charAt(message.length() - 1) == ',') {
-                        message.deleteCharAt(message.length() - 1);
-                    }
-
-                    requestSocket.send(message.toString());
-                    requestSocket.recv(); // Expect "INDEX REPLY: OK"
-                } catch (IOException e) {
-                    System.err.println("ERROR: Failed to read file: " + file.getAbsolutePath());
-                    e.printStackTrace();
-                }
+        IndexResult result = new IndexResult((endTime - startTime) / 1000.0, totalBytesRead, documentsIndexed,
+                batchesSent, peakBatchesInFlight);
+        result.documentsUnchanged = documentsUnchanged;
+        result.documentsDeleted = documentsDeleted;
+        result.batchesRetried = batchesRetried;
+        return result;
+    }
+
+    // Where manifests of indexed folders are kept, one per folder and server index
+    public void setManifestDirectory(Path manifestDirectory) {
+        this.manifestDirectory = manifestDirectory;
+    }
+
+    // Returns null when a server cannot tell us which index we are adding to
+    private FileManifest loadManifest(File folder) {
+        List<String> indexIDs = new ArrayList<>();
+        for (ServerConnection server : servers) {
+            if (server.getIndexID() == null) {
+                return null;
             }
+            indexIDs.add(server.getIndexID());
+        }
+        // A sharded deployment is identified by all of its shards' indexes, in order
+        String indexKey = indexIDs.size() == 1 ? indexIDs.get(0) : "shards-" + checksum(String.join(",", indexIDs));
+        String name = "manifest-" + indexKey + "-" + checksum(folder.getAbsolutePath()) + ".tsv";
+        try {
+            return FileManifest.load(manifestDirectory.resolve(name));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("WARNING: Failed to read index manifest, sending all files: " + e.getMessage());
+            return null;
         }
-        return totalBytesRead;
     }
 
-    public SearchResult searchFiles(ArrayList<String> terms) {
-        long startTime = System.currentTimeMillis();
+    private static String checksum(String value) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(value.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(checksum.getValue());
+    }
+
+    // Shard holding the document; stable across clients and runs for the same number of shards
+    public static int shardFor(String documentPath, int numShards) {
+        if (numShards == 1) {
+            return 0;
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(documentPath.getBytes(StandardCharsets.UTF_8));
+        return (int) (checksum.getValue() % numShards);
+    }
 
-        // Build search message: "SEARCH REQUEST|term1,term2,..."
-        StringBuilder searchMessage = new StringBuilder("SEARCH REQUEST|");
-        for (String term : terms) {
-            searchMessage.append(term).append(",");
+    // Indexes one document on the shard holding it and waits for the server to acknowledge it
+    public void indexDocument(String documentPath, Map<String, Long> wordFrequencies) {
+        ServerConnection server = servers.get(shardFor(documentPath, servers.size()));
+        if (useTextProtocol) {
+            server.indexDocument(clientID, documentPath, wordFrequencies);
+        } else {
+            IndexBatchSender sender = server.newBatchSender(clientID, 1, 1);
+            sender.add(documentPath, wordFrequencies);
+            sender.finish();
         }
-        if (searchMessage.charAt(searchMessage.length() - 1) == ',') {
-            searchMessage.deleteCharAt(searchMessage.length() - 1);
+    }
+
+    // Removes documents from the index, in batches sent to the shards holding them
+    public void deleteDocuments(List<String> documentPaths) {
+        List<List<String>> pathsByShard = new ArrayList<>();
+        for (int shard = 0; shard < servers.size(); shard++) {
+            pathsByShard.add(new ArrayList<>());
+        }
+        for (String documentPath : documentPaths) {
+            pathsByShard.get(shardFor(documentPath, servers.size())).add(documentPath);
         }
-        requestSocket.send(searchMessage.toString());
 
-        String response = new String(requestSocket.recv());
-        ArrayList<DocPathFreqPair> results = new ArrayList<>();
-        String[] parts = response.split("\\|");
+        for (int shard = 0; shard < servers.size(); shard++) {
+            List<String> paths = pathsByShard.get(shard);
+            for (int start = 0; start < paths.size(); start += documentsPerBatch) {
+                servers.get(shard).deleteDocuments(paths.subList(start, Math.min(start + documentsPerBatch, paths.size())));
+            }
+        }
+    }
+
+    public void setCrawlerThreads(int crawlerThreads) {
+        this.crawlerThreads = crawlerThreads;
+    }
 
-        // parts[0] is "SEARCH REPLY"
-        // Each subsequent part is "ownerID:docPath:freq"
-        for (int i = 1; i < parts.length; i++) {
-            if (parts[i].isEmpty()) {
-                continue;
+    // Documents per INDEX_BATCH_REQUEST and how many batches may await acknowledgement at once
+    public void setIndexBatching(int documentsPerBatch, int maxBatchesInFlight) {
+        this.documentsPerBatch = documentsPerBatch;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+    }
+
+    // Files are read and tokenized in parallel; this thread only sends the results. With a
+    // manifest, files whose size and modification time are unchanged are not even read.
+    private long traverseAndIndex(File folder, long totalBytesRead, FileManifest manifest, boolean fullReindex) {
+        long[] bytesRead = { totalBytesRead };
+        DocumentCrawler crawler = new DocumentCrawler(crawlerThreads, CRAWL_QUEUE_CAPACITY);
+        crawlComplete = crawler.crawl(folder, file -> manifest == null
+                || manifest.needsScan(file.getAbsolutePath(), file.length(), file.lastModified()) || fullReindex, document -> {
+            bytesRead[0] += document.bytesRead;
+            if (manifest != null) {
+                boolean unchanged = !fullReindex && manifest.hasContent(document);
+                manifest.record(document);
+                if (unchanged) {
+                    return;
+                }
             }
-            String[] docData = parts[i].split(":");
-            if (docData.length >= 3) {
-                long docOwner = Long.parseLong(docData[0]);
-                String docPath = docData[1];
-                long freq = Long.parseLong(docData[2]);
-                results.add(new DocPathFreqPair(docPath, freq, docOwner));
+            int shard = shardFor(document.documentPath, servers.size());
+            if (useTextProtocol) {
+                servers.get(shard).indexDocument(clientID, document.documentPath, document.wordFrequencies);
+            } else {
+                batchSenders[shard].add(document.documentPath, document.wordFrequencies);
             }
+            documentsIndexed++;
+        });
+        return bytesRead[0];
+    }
+
+    // Documents containing all of the terms
+    public SearchResult searchFiles(ArrayList<String> terms) {
+        return searchFiles(new SearchQuery(terms, SearchQuery.Operator.AND));
+    }
+
+    // Sends the query to every shard before waiting for any reply, so the shards search in
+    // parallel, then merges their top K lists. A document's score only depends on the document
+    // itself, so the global top K is the top K of the union of the shards' top K lists.
+    public SearchResult searchFiles(SearchQuery query) {
+        long startTime = System.currentTimeMillis();
+
+        if (!replicas.isEmpty()) {
+            ServerConnection replica = replicas.get(nextReplica);
+            nextReplica = (nextReplica + 1) % replicas.size();
+            replica.sendSearch(query);
+            ArrayList<DocPathFreqPair> results = replica.receiveSearch();
+            return new SearchResult((System.currentTimeMillis() - startTime) / 1000.0, results);
+        }
+
+        for (ServerConnection server : servers) {
+            server.sendSearch(query);
+        }
+        ArrayList<DocPathFreqPair> results = new ArrayList<>();
+        for (ServerConnection server : servers) {
+            results.addAll(server.receiveSearch());
+        }
+        if (servers.size() > 1) {
+            results = mergeShardResults(results, query.maxResults);
         }
 
         long endTime = System.currentTimeMillis();
         return new SearchResult((endTime - startTime) / 1000.0, results);
     }
 
+    // Top maxResults of the shards' concatenated results, by frequency and then path
+    public static ArrayList<DocPathFreqPair> mergeShardResults(ArrayList<DocPathFreqPair> results, int maxResults) {
+        results.sort((a, b) -> a.wordFrequency != b.wordFrequency
+                ? Long.compare(b.wordFrequency, a.wordFrequency) : a.documentPath.compareTo(b.documentPath));
+        if (results.size() > maxResults) {
+            results = new ArrayList<>(results.subList(0, maxResults));
+        }
+        return results;
+    }
+
     public long getInfo() {
         return clientID;
     }
 
     public void connect(String serverIP, String serverPort) {
-        requestSocket.connect("tcp://" + serverIP + ":" + serverPort);
-        requestSocket.send("REGISTER REQUEST");
+        connectShards(List.of(serverIP + ":" + serverPort));
+    }
+
+    // Connects to every shard of a sharded index, given as "<host>:<port>" addresses. The first
+    // shard hands out client IDs, so a client is known by the same ID on every shard.
+    // Earlier connections and their replicas are closed first: documents are routed by the
+    // number of shards, so a stale one would send them to the wrong server.
+    public void connectShards(List<String> addresses) {
+        closeConnections();
+        for (String address : addresses) {
+            servers.add(new ServerConnection(context, address, useTextProtocol));
+        }
+        this.clientID = servers.get(0).getClientID();
+        System.out.println("Connected to " + (servers.size() == 1 ? "server" : servers.size() + " shards")
+                + ". Client ID: " + clientID);
+    }
 
-        byte[] reply = requestSocket.recv();
-        this.clientID = Long.parseLong(new String(reply));
-        System.out.println("Connected to server. Client ID: " + clientID);
+    // Spreads searches over read-only followers of the connected server. Indexing still goes
+    // to the server itself; followers see its updates a moment later.
+    public void connectReplicas(List<String> addresses) {
+        if (servers.size() > 1) {
+            throw new IllegalStateException("Search replicas are not supported for a sharded index");
+        }
+        for (String address : addresses) {
+            replicas.add(new ServerConnection(context, address, useTextProtocol));
+        }
+        System.out.println("Searching " + replicas.size() + " replicas.");
     }
 
     public void disconnect() {
-        // Here, if you prefer to send DISCONNECT rather than QUIT, update accordingly.
-        requestSocket.send("QUIT");
-        requestSocket.close();
+        closeConnections();
         context.close();
         System.out.println("Disconnected from server.");
     }
+
+    private void closeConnections() {
+        for (ServerConnection server : servers) {
+            server.close();
+        }
+        for (ServerConnection replica : replicas) {
+            replica.close();
+        }
+        servers.clear();
+        replicas.clear();
+    }
 }
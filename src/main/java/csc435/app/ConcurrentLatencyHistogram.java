@@ -0,0 +1,33 @@
+package csc435.app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// LatencyHistogram that any number of threads can record into without locking, for metrics
+// the server keeps while it runs. Reads take a snapshot, which is consistent per bucket but
+// may miss values recorded while it is being taken.
+public class ConcurrentLatencyHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(LatencyHistogram.index(value));
+        sum.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    public LatencyHistogram snapshot() {
+        long[] bucketCounts = new long[counts.length()];
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = counts.get(i);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.addBuckets(bucketCounts, sum.sum(), min.get(), max.get());
+        return histogram;
+    }
+}
@@ -0,0 +1,169 @@
+package csc435.app;
+
+import java.util.*;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// Compares the REP worker pool with virtual thread dispatch under many connected clients.
+// Each client keeps one search outstanding; most searches are cheap AND queries, and a few are
+// OR queries over the most common terms that take milliseconds each. Reports throughput and
+// the latency of the cheap searches, which is what a slow search at the head of a worker's
+// queue holds up.
+public class DispatchBenchmark {
+    private static final int BASE_PORT = 12480;
+
+    public static void main(String[] args) throws InterruptedException {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String clientCounts = args.length > 1 ? args[1] : "16,256,1024";
+        int numWorkers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int maxConcurrent = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 50);
+        IndexStore store = new IndexStore();
+        List<IndexRequest> batch = new ArrayList<>();
+        for (int i = 0; i < numDocuments; i++) {
+            batch.add(new IndexRequest(1, "/bench/doc-" + i, corpus.document(i)));
+            if (batch.size() == 256) {
+                store.updateIndexBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.updateIndexBatch(batch);
+
+        byte[] slowQuery = BinaryProtocol.encodeSearchRequest(new SearchQuery(
+                List.of(corpus.term(0), corpus.term(1), corpus.term(2)), SearchQuery.Operator.OR, 1000));
+        List<byte[]> fastQueries = new ArrayList<>();
+        for (int rank = 100; rank < 200; rank++) {
+            fastQueries.add(BinaryProtocol.encodeSearchRequest(new SearchQuery(
+                    List.of(corpus.term(rank), corpus.term(rank + 1000)), SearchQuery.Operator.AND)));
+        }
+
+        System.out.println("mode,clients,searches/s,fast p50 ms,fast p99 ms,slow p50 ms");
+        int port = BASE_PORT;
+        for (String count : clientCounts.split(",")) {
+            int numClients = Integer.parseInt(count.trim());
+            for (boolean virtualThreads : new boolean[] { false, true }) {
+                ServerProcessingEngine engine = new ServerProcessingEngine(store);
+                        engine.setSearchCacheSize(0); // Every search is evaluated
+                if (virtualThreads) {
+                    engine.setVirtualThreadDispatch(maxConcurrent);
+                }
+                engine.initialize(port, numWorkers);
+                Thread.sleep(500);
+
+                String mode = virtualThreads ? "virtual(" + maxConcurrent + ")" : "workers(" + numWorkers + ")";
+                run(mode, port, numClients, seconds, fastQueries, slowQuery);
+                engine.shutdown();
+                port += 2;
+            }
+        }
+    }
+
+    private static void run(String mode, int port, int numClients, int seconds,
+            List<byte[]> fastQueries, byte[] slowQuery) throws InterruptedException {
+        int numThreads = Math.min(numClients, 8);
+        List<long[]> fastLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<long[]> slowLatencies = Collections.synchronizedList(new ArrayList<>());
+        long[] completed = new long[numThreads];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            int thread = t;
+            int clients = numClients / numThreads + (t < numClients % numThreads ? 1 : 0);
+            threads.add(new Thread(() -> {
+                LongList fast = new LongList();
+                LongList slow = new LongList();
+                Random random = new Random(thread);
+                try (ZContext context = new ZContext()) {
+                    ZMQ.Poller poller = context.createPoller(clients);
+                    ZMQ.Socket[] sockets = new ZMQ.Socket[clients];
+                    long[] sentAt = new long[clients];
+                    boolean[] isSlow = new boolean[clients];
+                    for (int c = 0; c < clients; c++) {
+                        sockets[c] = context.createSocket(SocketType.REQ);
+                        sockets[c].connect("tcp://localhost:" + port);
+                        poller.register(sockets[c], ZMQ.Poller.POLLIN);
+                    }
+                    for (int c = 0; c < clients; c++) {
+                        isSlow[c] = send(sockets[c], random, fastQueries, slowQuery);
+                        sentAt[c] = System.nanoTime();
+                    }
+                    // Closed loop: every reply is answered with the client's next search
+                    while (System.nanoTime() < deadline) {
+                        poller.poll(100);
+                        for (int c = 0; c < clients; c++) {
+                            if (poller.pollin(c)) {
+                                ZMsg.recvMsg(sockets[c]).destroy();
+                                long now = System.nanoTime();
+                                (isSlow[c] ? slow : fast).add(now - sentAt[c]);
+                                completed[thread]++;
+                                isSlow[c] = send(sockets[c], random, fastQueries, slowQuery);
+                                sentAt[c] = now;
+                            }
+                        }
+                    }
+                    for (ZMQ.Socket socket : sockets) {
+                        socket.setLinger(0);
+                    }
+                    poller.close();
+                }
+                fastLatencies.add(fast.toArray());
+                slowLatencies.add(slow.toArray());
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = Arrays.stream(completed).sum();
+        long[] fast = merge(fastLatencies);
+        long[] slow = merge(slowLatencies);
+        System.out.printf("%s,%d,%.0f,%.3f,%.3f,%.3f%n", mode, numClients, total / (double) seconds,
+                percentile(fast, 0.50) / 1e6, percentile(fast, 0.99) / 1e6, percentile(slow, 0.50) / 1e6);
+    }
+
+    // One search in twenty is slow; returns whether this one is
+    private static boolean send(ZMQ.Socket socket, Random random, List<byte[]> fastQueries, byte[] slowQuery) {
+        boolean slow = random.nextInt(20) == 0;
+        socket.sendMore(BinaryProtocol.header(BinaryProtocol.SEARCH_REQUEST));
+        socket.send(slow ? slowQuery : fastQueries.get(random.nextInt(fastQueries.size())));
+        return slow;
+    }
+
+    private static long[] merge(List<long[]> parts) {
+        long[] merged = parts.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static long percentile(long[] sortedLatencies, double quantile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+    }
+
+    private static class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
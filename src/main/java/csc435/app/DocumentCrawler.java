@@ -0,0 +1,181 @@
+package csc435.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Walks a directory tree and tokenizes its files on a fork-join pool. Subdirectories are
+// forked as separate tasks, and tokenized documents are handed to the calling thread
+// through a bounded queue, so the single network sender applies backpressure to the crawl.
+// A crawl that could not list every directory says so, so that callers never take the files
+// it did not see for deleted ones.
+public class DocumentCrawler {
+    private final int parallelism;
+    private final int queueCapacity;
+
+    public static class ScannedDocument {
+        public String documentPath;
+        public Map<String, Long> wordFrequencies;
+        public long bytesRead;
+        // Size and modification time seen before the file was read, and a checksum of its content
+        public long size;
+        public long lastModified;
+        public long contentChecksum;
+
+        public ScannedDocument(String documentPath, Map<String, Long> wordFrequencies, long bytesRead) {
+            this.documentPath = documentPath;
+            this.wordFrequencies = wordFrequencies;
+            this.bytesRead = bytesRead;
+        }
+    }
+
+    // One reusable tokenizer per crawler thread
+    private static final ThreadLocal<StreamingTokenizer> TOKENIZER = ThreadLocal.withInitial(StreamingTokenizer::new);
+
+    // Marks the end of the crawl in the queue
+    private static final ScannedDocument END = new ScannedDocument(null, null, 0);
+
+    public DocumentCrawler(int parallelism, int queueCapacity) {
+        this.parallelism = Math.max(1, parallelism);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    // Calls consumer on the calling thread for every readable file under folder. Returns false
+    // if some directory could not be listed, or the crawl was interrupted.
+    public boolean crawl(File folder, Consumer<ScannedDocument> consumer) {
+        return crawl(folder, file -> true, consumer);
+    }
+
+    // Only reads the files accepted by filter, which is called on the crawler threads. An
+    // exception thrown by a crawler thread is thrown here once the crawl has stopped.
+    public boolean crawl(File folder, Predicate<File> filter, Consumer<ScannedDocument> consumer) {
+        BlockingQueue<ScannedDocument> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        CrawlState state = new CrawlState(queue, filter);
+
+        pool.execute(() -> {
+            try {
+                new CrawlTask(folder, state).invoke();
+            } catch (RuntimeException e) {
+                state.failure = e;
+            } finally {
+                state.offer(END);
+            }
+        });
+
+        try {
+            while (true) {
+                ScannedDocument document = queue.take();
+                if (document == END) {
+                    break;
+                }
+                consumer.accept(document);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // Stops producers if the consumer failed part way through
+            state.cancelled = true;
+            queue.clear();
+            pool.shutdownNow();
+        }
+
+        if (state.failure != null) {
+            throw state.failure;
+        }
+        return !state.incomplete;
+    }
+
+    private static class CrawlState {
+        final BlockingQueue<ScannedDocument> queue;
+        final Predicate<File> filter;
+        volatile boolean cancelled;
+        volatile boolean incomplete; // Some directory could not be listed
+        volatile RuntimeException failure;
+
+        CrawlState(BlockingQueue<ScannedDocument> queue, Predicate<File> filter) {
+            this.queue = queue;
+            this.filter = filter;
+        }
+
+        void offer(ScannedDocument document) {
+            try {
+                // Blocks while the sender is behind; gives up once the crawl was cancelled
+                while (!cancelled) {
+                    if (queue.offer(document, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // Never serialized
+    private static class CrawlTask extends RecursiveAction {
+        private final File folder;
+        private final CrawlState state;
+
+        CrawlTask(File folder, CrawlState state) {
+            this.folder = folder;
+            this.state = state;
+        }
+
+        @Override
+        protected void compute() {
+            if (state.cancelled) {
+                return;
+            }
+            File[] files = folder.listFiles();
+            if (files == null) {
+                System.err.println("ERROR: Failed to list directory: " + folder.getAbsolutePath());
+                state.incomplete = true;
+                return;
+            }
+
+            List<CrawlTask> subfolders = new ArrayList<>();
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    CrawlTask task = new CrawlTask(file, state);
+                    task.fork();
+                    subfolders.add(task);
+                }
+            }
+
+            for (File file : files) {
+                if (state.cancelled) {
+                    break;
+                }
+                if (file.isFile() && state.filter.test(file)) {
+                    try {
+                        long size = file.length();
+                        long lastModified = file.lastModified();
+                        StreamingTokenizer tokenizer = TOKENIZER.get();
+                        Map<String, Long> wordFrequencies = tokenizer.tokenize(file.toPath());
+                        ScannedDocument document = new ScannedDocument(file.getAbsolutePath(), wordFrequencies, tokenizer.getBytesScanned());
+                        document.size = size;
+                        document.lastModified = lastModified;
+                        document.contentChecksum = tokenizer.getContentChecksum();
+                        state.offer(document);
+                    } catch (IOException e) {
+                        System.err.println("ERROR: Failed to read file: " + file.getAbsolutePath());
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            for (CrawlTask task : subfolders) {
+                task.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package csc435.app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Dense docId-indexed table of document paths and owning client IDs.
+// Storage is an append-only list of fixed-size chunks, so lookups are two array
+// reads and never take a lock, and growing the table never copies existing entries.
+public class DocumentTable {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 17; // ~2 billion documents
+
+    private static final class Chunk {
+        final AtomicReferenceArray<String> paths = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final AtomicLongArray owners = new AtomicLongArray(CHUNK_SIZE);
+    }
+
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    public void put(long documentNumber, String documentPath, long clientID) {
+        Chunk chunk = chunkFor(documentNumber, true);
+        int slot = (int) (documentNumber & CHUNK_MASK);
+        chunk.owners.set(slot, clientID);
+        chunk.paths.set(slot, documentPath);
+    }
+
+    public void setOwner(long documentNumber, long clientID) {
+        Chunk chunk = chunkFor(documentNumber, true);
+        chunk.owners.set((int) (documentNumber & CHUNK_MASK), clientID);
+    }
+
+    // Forgets a deleted or replaced document; getPath returns null for it afterwards
+    public void remove(long documentNumber) {
+        Chunk chunk = chunkFor(documentNumber, false);
+        if (chunk != null) {
+            int slot = (int) (documentNumber & CHUNK_MASK);
+            chunk.paths.set(slot, null);
+            chunk.owners.set(slot, -1);
+        }
+    }
+
+    // Returns null if no document was stored under this number
+    public String getPath(long documentNumber) {
+        Chunk chunk = chunkFor(documentNumber, false);
+        return chunk == null ? null : chunk.paths.get((int) (documentNumber & CHUNK_MASK));
+    }
+
+    public long getOwner(long documentNumber) {
+        Chunk chunk = chunkFor(documentNumber, false);
+        if (chunk == null) {
+            return -1;
+        }
+        int slot = (int) (documentNumber & CHUNK_MASK);
+        return chunk.paths.get(slot) == null ? -1 : chunk.owners.get(slot);
+    }
+
+    public void clear() {
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            chunks.set(i, null);
+        }
+    }
+
+    private Chunk chunkFor(long documentNumber, boolean create) {
+        if (documentNumber < 0 || (documentNumber >>> CHUNK_BITS) >= MAX_CHUNKS) {
+            if (create) {
+                throw new IllegalArgumentException("Document number out of range: " + documentNumber);
+            }
+            return null;
+        }
+        int index = (int) (documentNumber >>> CHUNK_BITS);
+        Chunk chunk = chunks.get(index);
+        if (chunk == null && create) {
+            chunks.compareAndSet(index, null, new Chunk());
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,117 @@
+package csc435.app;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Client-side record of the files sent to one server index: path, size, modification time and
+// content checksum. Re-indexing a folder only reads files whose size or modification time
+// changed, only sends those whose content changed, and deletes files that disappeared.
+// The crawler threads check files concurrently; the sending thread records them.
+public class FileManifest {
+    private static final String HEADER = "# file-retrieval manifest 1";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final long contentChecksum;
+
+        Entry(long size, long lastModified, long contentChecksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentChecksum = contentChecksum;
+        }
+    }
+
+    private FileManifest(Path file) {
+        this.file = file;
+    }
+
+    // Format: a header line, then "<size>\t<lastModified>\t<checksum hex>\t<path>" per file
+    public static FileManifest load(Path file) throws IOException {
+        FileManifest manifest = new FileManifest(file);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                System.err.println("WARNING: Ignoring unrecognized manifest " + file);
+                return manifest;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4) {
+                    manifest.entries.put(fields[3], new Entry(Long.parseLong(fields[0]),
+                            Long.parseLong(fields[1]), Long.parseUnsignedLong(fields[2], 16)));
+                }
+            }
+        }
+        return manifest;
+    }
+
+    // Notes that the file still exists and returns whether it has to be read again
+    public boolean needsScan(String documentPath, long size, long lastModified) {
+        seen.add(documentPath);
+        Entry entry = entries.get(documentPath);
+        return entry == null || entry.size != size || entry.lastModified != lastModified;
+    }
+
+    // True if the server already has this content, e.g. the file was only touched
+    public boolean hasContent(DocumentCrawler.ScannedDocument document) {
+        Entry entry = entries.get(document.documentPath);
+        return entry != null && entry.size == document.size && entry.contentChecksum == document.contentChecksum;
+    }
+
+    public void record(DocumentCrawler.ScannedDocument document) {
+        entries.put(document.documentPath, new Entry(document.size, document.lastModified, document.contentChecksum));
+    }
+
+    public int getSeenCount() {
+        return seen.size();
+    }
+
+    // Forgets and returns the recorded files the last crawl did not see
+    public List<String> removeUnseen() {
+        List<String> removed = new ArrayList<>();
+        for (String documentPath : entries.keySet()) {
+            if (!seen.contains(documentPath)) {
+                removed.add(documentPath);
+            }
+        }
+        for (String documentPath : removed) {
+            entries.remove(documentPath);
+        }
+        return removed;
+    }
+
+    // Written to a temporary file first so an interrupted save keeps the previous manifest
+    public void save() throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.size + "\t" + value.lastModified + "\t"
+                        + Long.toHexString(value.contentChecksum) + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
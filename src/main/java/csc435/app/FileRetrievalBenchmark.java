@@ -1,35 +1,60 @@
 package csc435.app;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 class BenchmarkWorker implements Runnable {
 
     private ClientProcessingEngine engine;
-    private String datasetPath;
+    private List<String> datasetPaths = new ArrayList<>();
     private long bytesRead;
+    private long documentsIndexed;
     private double executionTime;
 
-    public BenchmarkWorker(String datasetPath, String serverIP, String serverPort) {
-        this.datasetPath = datasetPath;
+    public BenchmarkWorker(String serverIP, String serverPort) {
         this.engine = new ClientProcessingEngine();
-        engine.connect(serverIP, serverPort);
+        if (serverPort.contains(",")) {
+            // A comma-separated port list means one shard per port on serverIP
+            List<String> addresses = new ArrayList<>();
+            for (String port : serverPort.split(",")) {
+                addresses.add(serverIP + ":" + port);
+            }
+            engine.connectShards(addresses);
+        } else {
+            engine.connect(serverIP, serverPort);
+        }
+    }
+
+    public void addDataset(String datasetPath) {
+        datasetPaths.add(datasetPath);
     }
 
     @Override
     public void run() {
         long start = System.nanoTime();
-        ClientProcessingEngine.IndexResult result = engine.indexFiles(datasetPath);
+        for (String datasetPath : datasetPaths) {
+            // Always send every file so that runs against a persistent server measure the same work
+            ClientProcessingEngine.IndexResult result = engine.indexFiles(datasetPath, true);
+            this.bytesRead += result.totalBytesRead;
+            this.documentsIndexed += result.documentsIndexed;
+            System.out.println("Indexed " + datasetPath + " in " + result.executionTime + " s, bytes read: "
+                    + result.totalBytesRead + String.format(", %.0f docs/s, peak batches in flight: %d",
+                            result.documentsPerSecond, result.peakBatchesInFlight));
+        }
         long end = System.nanoTime();
-
-        this.bytesRead = result.totalBytesRead;
         this.executionTime = (end - start) / 1e9; // Convert to seconds
-        System.out.println("Indexed " + datasetPath + " in " + this.executionTime + " s, bytes read: " + this.bytesRead);
+    }
+
+    public ClientProcessingEngine getEngine() {
+        return engine;
     }
 
     public void search(String query) {
-        List<String> terms = List.of(query.split(" AND "));
-        ClientProcessingEngine.SearchResult result = engine.searchFiles(new ArrayList<>(terms));
+        ClientProcessingEngine.SearchResult result = engine.searchFiles(SearchQuery.parse(query));
 
         System.out.println("\nSearch query: \"" + query + "\"");
         System.out.println("Search completed in " + result.executionTime + " s");
@@ -55,6 +80,10 @@ class BenchmarkWorker implements Runnable {
         return bytesRead;
     }
 
+    public long getDocumentsIndexed() {
+        return documentsIndexed;
+    }
+
     public double getExecutionTime() {
         return executionTime;
     }
@@ -62,19 +91,68 @@ class BenchmarkWorker implements Runnable {
 
 public class FileRetrievalBenchmark {
 
-    public static void main(String[] args) {
-        if (args.length < 4) {
-            System.out.println("Usage: java FileRetrievalBenchmark <serverIP> <serverPort> <numClients> <datasetPath1> ...");
+    public static void main(String[] commandLine) throws InterruptedException {
+        // Options may appear anywhere; the remaining arguments are positional. Giving a duration
+        // runs mixed load after indexing instead of the fixed searches.
+        List<String> positional = new ArrayList<>();
+        LoadGenerator load = null;
+        String format = "csv";
+        String outputPath = null;
+        try {
+            for (String arg : commandLine) {
+                if (arg.startsWith("--")) {
+                    if (load == null) {
+                        load = new LoadGenerator();
+                    }
+                    String value = arg.substring(arg.indexOf('=') + 1);
+                    if (arg.startsWith("--duration=")) {
+                        load.durationSeconds = Integer.parseInt(value);
+                    } else if (arg.startsWith("--warmup=")) {
+                        load.warmupSeconds = Integer.parseInt(value);
+                    } else if (arg.startsWith("--rate=")) {
+                        load.requestsPerSecond = Double.parseDouble(value);
+                    } else if (arg.startsWith("--write-ratio=")) {
+                        load.writeRatio = Double.parseDouble(value);
+                    } else if (arg.startsWith("--queries=")) {
+                        load.queries = LoadGenerator.readQueries(Paths.get(value));
+                    } else if (arg.startsWith("--format=") && (value.equals("csv") || value.equals("json"))) {
+                        format = value;
+                    } else if (arg.startsWith("--output=")) {
+                        outputPath = value;
+                    } else {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                } else {
+                    positional.add(arg);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        String[] args = positional.toArray(new String[0]);
+        if (args.length < 3 || (load == null && args.length < 4)) {
+            System.out.println("Usage: java FileRetrievalBenchmark <serverIP> <serverPort[,port...]> <numClients> <datasetPath1> ...");
+            System.out.println("Load mode: [--duration=<s>] [--warmup=<s>] [--rate=<requests/s>] [--write-ratio=<0..1>]"
+                    + " [--queries=<file>] [--format=csv|json] [--output=<file>]");
             return;
         }
 
         String serverIP = args[0];
         String serverPort = args[1];
         int numClients = Integer.parseInt(args[2]);
+        if (numClients < 1) {
+            System.out.println("At least one client is needed.");
+            return;
+        }
 
+        // The datasets are shared out over the clients in turn
         List<BenchmarkWorker> workers = new ArrayList<>();
+        for (int i = 0; i < numClients; i++) {
+            workers.add(new BenchmarkWorker(serverIP, serverPort));
+        }
         for (int i = 3; i < args.length; i++) {
-            workers.add(new BenchmarkWorker(args[i], serverIP, serverPort));
+            workers.get((i - 3) % numClients).addDataset(args[i]);
         }
 
         long startTime = System.nanoTime();
@@ -98,14 +176,34 @@ public class FileRetrievalBenchmark {
         long totalBytesRead = workers.stream().mapToLong(BenchmarkWorker::getBytesRead).sum();
 
         System.out.println("\nTotal time " + totalExecutionTime + " seconds.");
+        long totalDocuments = workers.stream().mapToLong(BenchmarkWorker::getDocumentsIndexed).sum();
         System.out.println("Total bytes read: " + totalBytesRead);
+        System.out.printf("Total documents: %d (%.0f docs/s)%n", totalDocuments, totalDocuments / totalExecutionTime);
 
-        if (!workers.isEmpty()) {
+        if (load != null) {
+            List<ClientProcessingEngine> clients = new ArrayList<>();
+            for (BenchmarkWorker worker : workers) {
+                clients.add(worker.getEngine());
+            }
+            System.out.printf("%nRunning load from %d clients for %d s after %d s of warmup%s...%n", numClients,
+                    load.durationSeconds, load.warmupSeconds,
+                    load.requestsPerSecond > 0 ? " at " + load.requestsPerSecond + " requests/s" : ", closed loop");
+            List<LoadGenerator.OperationResult> results = load.run(clients);
+            try (PrintStream out = outputPath == null ? null : new PrintStream(outputPath)) {
+                PrintStream target = out == null ? System.out : out;
+                if (format.equals("json")) {
+                    load.printJson(target, numClients, results);
+                } else {
+                    load.printCsv(target, numClients, results);
+                }
+            } catch (FileNotFoundException e) {
+                System.err.println("Failed to write " + outputPath + ": " + e.getMessage());
+            }
+        } else {
             // Execute specified search queries.
-            workers.get(0).search("the");
-            workers.get(0).search("child-like");
-            workers.get(0).search("child-like AND cats");
-            workers.get(0).search("child-like AND cats AND dogs");
+            for (String query : LoadGenerator.DEFAULT_QUERIES) {
+                workers.get(0).search(query);
+            }
         }
 
         for (BenchmarkWorker worker : workers) {
@@ -3,7 +3,9 @@ package csc435.app;
 public class FileRetrievalClient {
 
     public static void main(String[] args) {
-        ClientProcessingEngine engine = new ClientProcessingEngine();
+        // --text-protocol keeps talking the legacy pipe-delimited format
+        boolean useTextProtocol = args.length > 0 && args[0].equals("--text-protocol");
+        ClientProcessingEngine engine = new ClientProcessingEngine(useTextProtocol);
         ClientAppInterface appInterface = new ClientAppInterface(engine);
         appInterface.readCommands();
     }
@@ -1,21 +1,122 @@
 package csc435.app;
 
 import csc435.app.IndexStore;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FileRetrievalServer {
 
-    public static void main(String[] args) {
+    public static void main(String[] commandLine) {
+        // Options may appear anywhere; the remaining arguments are positional
+        List<String> positional = new ArrayList<>();
+        int notifyPort = 0; // Updates are only published for followers when asked for
+        String primaryAddress = null;
+        int primaryNotifyPort = ServerProcessingEngine.DEFAULT_NOTIFY_PORT;
+        int cacheSize = ServerProcessingEngine.DEFAULT_CACHE_SIZE;
+        int maxVirtualThreadRequests = 0;
+        int adminPort = 0;
+        int numIndexWorkers = ServerProcessingEngine.DEFAULT_INDEX_WORKERS;
+        int indexQueueLimit = ServerProcessingEngine.NO_QUEUE_LIMIT;
+        int searchQueueLimit = ServerProcessingEngine.NO_QUEUE_LIMIT;
+        boolean offHeap = false;
+        for (String arg : commandLine) {
+            if (arg.equals("--publish")) {
+                // Publish index updates for followers on the default notification port
+                notifyPort = notifyPort > 0 ? notifyPort : ServerProcessingEngine.DEFAULT_NOTIFY_PORT;
+            } else if (arg.startsWith("--notify-port=")) {
+                // Publish index updates for followers on this port
+                notifyPort = Integer.parseInt(arg.substring("--notify-port=".length()));
+            } else if (arg.startsWith("--admin-port=")) {
+                // Answers any request on this port with the server's stats as JSON
+                adminPort = Integer.parseInt(arg.substring("--admin-port=".length()));
+            } else if (arg.startsWith("--virtual-threads=")) {
+                // Run each request on a virtual thread, this many at a time, instead of on the workers
+                maxVirtualThreadRequests = Integer.parseInt(arg.substring("--virtual-threads=".length()));
+            } else if (arg.startsWith("--index-workers=")) {
+                // 0 sends index updates to the search workers, as a single queue
+                numIndexWorkers = Integer.parseInt(arg.substring("--index-workers=".length()));
+            } else if (arg.startsWith("--index-queue=")) {
+                // Answer index updates beyond this many queued with a busy reply; off by default,
+                // since older clients do not send a request again after one
+                indexQueueLimit = Integer.parseInt(arg.substring("--index-queue=".length()));
+            } else if (arg.startsWith("--search-queue=")) {
+                // Likewise for searches
+                searchQueueLimit = Integer.parseInt(arg.substring("--search-queue=".length()));
+            } else if (arg.equals("--off-heap")) {
+                // Keep the in-memory index's terms and postings in direct buffers, off the heap
+                offHeap = true;
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheSize = Integer.parseInt(arg.substring("--cache-size=".length()));
+            } else if (arg.startsWith("--follow=")) {
+                // <host>:<port>[:<notify port>] of the primary whose index this server copies
+                String[] parts = arg.substring("--follow=".length()).split(":");
+                if (parts.length < 2 || parts.length > 3) {
+                    System.out.println("Usage: --follow=<primary host>:<port>[:<notify port>]");
+                    return;
+                }
+                primaryAddress = parts[0] + ":" + parts[1];
+                if (parts.length == 3) {
+                    primaryNotifyPort = Integer.parseInt(parts[2]);
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+        String[] args = positional.toArray(new String[0]);
         if (args.length < 2) {
-            System.out.println("Usage: java FileRetrievalServer <port> <numWorkerThreads>");
+            System.out.println("Usage: java FileRetrievalServer <port> <numWorkerThreads> [dataDirectory [none|batched|request]]"
+                    + " [--publish] [--notify-port=<port>] [--follow=<host>:<port>[:<notify port>]] [--cache-size=<entries>]"
+                    + " [--virtual-threads=<max concurrent requests>] [--index-workers=<threads>]"
+                    + " [--index-queue=<requests>] [--search-queue=<requests>] [--admin-port=<port>] [--off-heap]");
+            return;
+        }
+        if (primaryAddress != null && args.length > 2) {
+            System.out.println("A follower keeps its index in memory and cannot use a data directory.");
+            return;
+        }
+        if (offHeap && args.length > 2) {
+            // Segments in a data directory are memory-mapped, so they are off the heap already
+            System.out.println("--off-heap applies to an in-memory index and cannot be used with a data directory.");
             return;
         }
         int serverPort = Integer.parseInt(args[0]);
         int numWorkerThreads = Integer.parseInt(args[1]);
 
-        IndexStore store = new IndexStore();
+        // Without a data directory the index lives only in memory. The durability level decides
+        // when acknowledged index batches are fsynced to the write-ahead log.
+        WriteAheadLog.Durability durability = WriteAheadLog.Durability.BATCHED;
+        if (args.length > 3) {
+            try {
+                durability = WriteAheadLog.Durability.parse(args[3]);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+        }
+        IndexStore store;
+        try {
+            if (args.length > 2) {
+                store = new IndexStore(Paths.get(args[2]), durability);
+            } else {
+                store = offHeap ? IndexStore.offHeap() : new IndexStore();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to open index in " + args[2] + ": " + e.getMessage());
+            return;
+        }
         ServerProcessingEngine engine = new ServerProcessingEngine(store);
         ServerAppInterface appInterface = new ServerAppInterface(engine);
 
+        engine.setNotifyPort(notifyPort);
+        engine.setSearchCacheSize(cacheSize);
+        engine.setVirtualThreadDispatch(maxVirtualThreadRequests);
+        engine.setAdmission(numIndexWorkers, indexQueueLimit, searchQueueLimit);
+        engine.setAdminPort(adminPort);
+        if (primaryAddress != null) {
+            engine.follow(primaryAddress, primaryNotifyPort);
+        }
         engine.initialize(serverPort, numWorkerThreads);
         appInterface.readCommands();
     }
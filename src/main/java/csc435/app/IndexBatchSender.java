@@ -0,0 +1,166 @@
+package csc435.app;
+
+import java.util.*;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// Packs documents into INDEX_BATCH_REQUEST messages and keeps up to maxBatchesInFlight
+// of them outstanding on a DEALER socket, so indexing is not bound by one round trip per file.
+// A batch the server turns away because its index queue is full is sent again after a delay
+// that doubles with each busy reply in a row, and no new batch goes out until it is accepted.
+// Batches may be applied in any order, so a document is held back while an earlier batch
+// holding the same path is unacknowledged; the server then always applies its versions in order.
+public class IndexBatchSender {
+    // Upper bound on a batch's encoded size, whatever the document count
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5_000;
+
+    private final ZMQ.Socket dealerSocket;
+    private final long clientID;
+    private final int documentsPerBatch;
+    private final int maxBatchesInFlight;
+
+    private ZMsg batch;
+    private int batchDocuments;
+    private int batchBytes;
+    private List<String> batchPaths = new ArrayList<>();
+    private long nextBatchId = 1;
+    private int batchesInFlight;
+    private int peakBatchesInFlight;
+    private long batchesSent;
+    private long documentsSent;
+    // Copies of the batches in flight by batch ID, kept until acknowledged
+    private final Map<Long, ZMsg> unacknowledged = new HashMap<>();
+    // Paths of the batches in flight by batch ID, and the batch holding each path
+    private final Map<Long, List<String>> unacknowledgedPaths = new HashMap<>();
+    private final Map<String, Long> pathsInFlight = new HashMap<>();
+    // Batches turned away and sent again, not yet accepted
+    private final Set<Long> rejected = new HashSet<>();
+    private int busyRepliesInRow;
+    private long batchesRetried;
+
+    public IndexBatchSender(ZMQ.Socket dealerSocket, long clientID, int documentsPerBatch, int maxBatchesInFlight) {
+        this.dealerSocket = dealerSocket;
+        this.clientID = clientID;
+        this.documentsPerBatch = Math.max(1, documentsPerBatch);
+        this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+    }
+
+    public void add(String documentPath, Map<String, Long> wordFrequencies) {
+        while (pathsInFlight.containsKey(documentPath)) {
+            awaitReply();
+        }
+        if (batch == null) {
+            batch = new ZMsg();
+            batch.add(new byte[0]); // Empty delimiter frame expected by the server's REP workers
+            batch.add(BinaryProtocol.header(BinaryProtocol.INDEX_BATCH_REQUEST));
+            batch.add(BinaryProtocol.encodeBatchId(nextBatchId++));
+        }
+
+        byte[] document = BinaryProtocol.encodeIndexRequest(clientID, documentPath, wordFrequencies);
+        batch.add(document);
+        batchPaths.add(documentPath);
+        batchDocuments++;
+        batchBytes += document.length;
+        documentsSent++;
+
+        if (batchDocuments >= documentsPerBatch || batchBytes >= MAX_BATCH_BYTES) {
+            flush();
+        }
+    }
+
+    // Sends the partially filled batch and waits until the server acknowledged every batch
+    public void finish() {
+        flush();
+        while (batchesInFlight > 0) {
+            awaitReply();
+        }
+    }
+
+    public int getPeakBatchesInFlight() {
+        return peakBatchesInFlight;
+    }
+
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+
+    // Batches sent again after a busy reply
+    public long getBatchesRetried() {
+        return batchesRetried;
+    }
+
+    public long getDocumentsSent() {
+        return documentsSent;
+    }
+
+    private void flush() {
+        if (batch == null) {
+            return;
+        }
+        // Bounded window: wait for replies until a slot is free and no batch is being retried
+        while (batchesInFlight >= maxBatchesInFlight || !rejected.isEmpty()) {
+            awaitReply();
+        }
+        long batchId = nextBatchId - 1;
+        unacknowledged.put(batchId, batch.duplicate());
+        unacknowledgedPaths.put(batchId, batchPaths);
+        for (String path : batchPaths) {
+            pathsInFlight.put(path, batchId);
+        }
+        batch.send(dealerSocket);
+        batch = null;
+        batchPaths = new ArrayList<>();
+        batchDocuments = 0;
+        batchBytes = 0;
+        batchesSent++;
+        batchesInFlight++;
+        peakBatchesInFlight = Math.max(peakBatchesInFlight, batchesInFlight);
+    }
+
+    private void awaitReply() {
+        ZMsg reply = ZMsg.recvMsg(dealerSocket);
+        reply.pop(); // Empty delimiter frame
+        byte type = BinaryProtocol.messageType(reply.pop().getData());
+        byte[] body = reply.isEmpty() ? new byte[0] : reply.pop().getData();
+        reply.destroy();
+
+        if (type == BinaryProtocol.ERROR_REPLY) {
+            throw new IllegalStateException("Server error: " + BinaryProtocol.decodeString(body));
+        }
+        if (type == BinaryProtocol.BUSY_REPLY) {
+            resend(new BinaryProtocol.Decoder(body));
+            return;
+        }
+        long batchId = BinaryProtocol.decodeBatchReply(body);
+        unacknowledged.remove(batchId);
+        rejected.remove(batchId);
+        List<String> paths = unacknowledgedPaths.remove(batchId);
+        for (String path : paths == null ? List.<String>of() : paths) {
+            pathsInFlight.remove(path, batchId);
+        }
+        busyRepliesInRow = 0;
+        batchesInFlight--;
+    }
+
+    // The batch stays in flight; it is sent again once the server's suggested delay has passed
+    private void resend(BinaryProtocol.Decoder busyReply) {
+        long batchId = busyReply.readVarLong();
+        long retryAfterMillis = busyReply.readVarLong();
+        ZMsg retry = unacknowledged.get(batchId);
+        if (retry == null) {
+            throw new IllegalStateException("Server rejected unknown index batch " + batchId);
+        }
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, retryAfterMillis << Math.min(busyRepliesInRow, 6));
+        busyRepliesInRow++;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to resend index batch " + batchId);
+        }
+        rejected.add(batchId);
+        retry.duplicate().send(dealerSocket);
+        batchesRetried++;
+    }
+}
@@ -0,0 +1,115 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Lists the live segments of a persistent index, oldest first, and the first write-ahead log
+// whose batches are not yet in a segment. The manifest is replaced atomically, so a crash
+// during a flush or merge leaves either the old or the new set of segments; files it does
+// not list are leftovers and are deleted on startup.
+public class IndexManifest {
+    private static final String FILE_NAME = "MANIFEST";
+    private static final String FORMAT = "format 1";
+
+    private final Path directory;
+    private final List<String> segments = new ArrayList<>();
+    private long nextSegmentId = 1;
+    private long firstLog = 1;
+    private String indexID;
+
+    private IndexManifest(Path directory) {
+        this.directory = directory;
+    }
+
+    public static IndexManifest load(Path directory) throws IOException {
+        IndexManifest manifest = new IndexManifest(directory);
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(FORMAT)) {
+            throw new IOException("Unsupported manifest format in " + file);
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] parts = line.split(" ", 2);
+            if (parts.length != 2) {
+                continue;
+            }
+            if (parts[0].equals("next-segment")) {
+                manifest.nextSegmentId = Long.parseLong(parts[1]);
+            } else if (parts[0].equals("index-id")) {
+                manifest.indexID = parts[1];
+            } else if (parts[0].equals("first-log")) {
+                manifest.firstLog = Long.parseLong(parts[1]);
+            } else if (parts[0].equals("segment")) {
+                manifest.segments.add(parts[1]);
+            }
+        }
+        return manifest;
+    }
+
+    public List<String> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    public void setSegments(List<String> segments) {
+        this.segments.clear();
+        this.segments.addAll(segments);
+    }
+
+    // Logs numbered below this only hold batches that are already in segments
+    public long getFirstLog() {
+        return firstLog;
+    }
+
+    public void setFirstLog(long firstLog) {
+        this.firstLog = firstLog;
+    }
+
+    // Random ID given to the index when it is created or cleared
+    public String getIndexID() {
+        return indexID;
+    }
+
+    public void setIndexID(String indexID) {
+        this.indexID = indexID;
+    }
+
+    public String newSegmentName() {
+        return String.format("segment-%08d.seg", nextSegmentId++);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void write() throws IOException {
+        StringBuilder content = new StringBuilder(FORMAT).append('\n');
+        if (indexID != null) {
+            content.append("index-id ").append(indexID).append('\n');
+        }
+        content.append("next-segment ").append(nextSegmentId).append('\n');
+        content.append("first-log ").append(firstLog).append('\n');
+        for (String segment : segments) {
+            content.append("segment ").append(segment).append('\n');
+        }
+
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(java.nio.ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,16 @@
+package csc435.app;
+
+import java.util.Map;
+
+// Decoded INDEX REQUEST, independent of the wire format it arrived in
+public class IndexRequest {
+    public long clientID;
+    public String documentPath;
+    public Map<String, Long> wordFrequencies;
+
+    public IndexRequest(long clientID, String documentPath, Map<String, Long> wordFrequencies) {
+        this.clientID = clientID;
+        this.documentPath = documentPath;
+        this.wordFrequencies = wordFrequencies;
+    }
+}
@@ -0,0 +1,229 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+// Immutable on-disk index segment, memory-mapped when opened. Opening only reads the header;
+// term lookups binary search the mapped term index, and postings are read in place. The
+// off-heap store keeps segments of the same layout in direct buffers instead of files.
+//
+// Layout (big-endian, except the little-endian block postings):
+//   header      magic, version, documentCount, termCount (ints), postingCount,
+//               termEntriesOffset, termIndexOffset, documentsOffset, tombstonesOffset (longs),
+//               tombstoneCount, unused (ints)
+//   postings    per term: blocks of delta and bit-packed postings behind a skip table,
+//               see PostingBlockCodec
+//   term entries per term, in unsigned UTF-8 byte order:
+//               int length, term bytes, int postingCount, int maxFrequency, long postingsOffset
+//   term index  long[termCount] offsets of the term entries
+//   documents   per document: int documentNumber, long ownerID, int length, path bytes
+//   tombstones  int[tombstoneCount] numbers of documents deleted or replaced while the
+//               segment's updates were in memory; they may belong to older segments
+public class IndexSegment {
+    static final int MAGIC = 0x46525347; // "FRSG"
+    static final int VERSION = 5;
+    static final int HEADER_SIZE = 64;
+
+    private final String name;
+    private final Path file; // Null for a segment held in a direct buffer
+    private final ByteBuffer buffer;
+    private final ByteBuffer postingsBuffer; // Little-endian view for block postings
+    private final int documentCount;
+    private final int termCount;
+    private final long postingCount;
+    private final int termIndexOffset;
+    private final int documentsOffset;
+    private final int tombstonesOffset;
+    private final int tombstoneCount;
+
+    public interface DocumentVisitor {
+        void visit(int documentNumber, long ownerID, String documentPath);
+    }
+
+    private IndexSegment(String name, Path file, ByteBuffer buffer) throws IOException {
+        this.name = name;
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an index segment: " + name);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported segment version " + version + " in " + name);
+        }
+        this.documentCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.postingCount = buffer.getLong(16);
+        this.termIndexOffset = (int) buffer.getLong(32);
+        this.documentsOffset = (int) buffer.getLong(40);
+        this.tombstonesOffset = (int) buffer.getLong(48);
+        this.tombstoneCount = buffer.getInt(56);
+        this.postingsBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than 2 GB: " + file);
+            }
+            return new IndexSegment(file.getFileName().toString(), file,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    // Segment written into a direct buffer by IndexSegmentWriter, never stored in a file
+    public static IndexSegment wrap(String name, ByteBuffer buffer) throws IOException {
+        return new IndexSegment(name, null, buffer.order(ByteOrder.BIG_ENDIAN));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public long getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    // Postings of the term, or null if the segment does not contain it
+    public PostingIterator postings(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTerm(entryOffset(middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return postingsAt(middle);
+            }
+        }
+        return null;
+    }
+
+    // Adds the segment's terms matching the pattern to matches, at most limit of them, the first
+    // ones in sorted order. Scans from the first term not below the pattern's prefix.
+    public void expand(TermPattern pattern, int limit, Collection<String> matches) {
+        byte[] prefix = pattern.prefixBytes();
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTerm(entryOffset(middle), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int found = 0;
+        for (int ordinal = low; ordinal < termCount && found < limit; ordinal++) {
+            byte[] term = termAt(ordinal);
+            if (!pattern.hasPrefix(term, 0, term.length)) {
+                break;
+            }
+            String text = new String(term, StandardCharsets.UTF_8);
+            if (pattern.matches(text)) {
+                matches.add(text);
+                found++;
+            }
+        }
+    }
+
+    // Term with the given ordinal in sorted order, used when merging segments
+    public byte[] termAt(int ordinal) {
+        int entry = entryOffset(ordinal);
+        byte[] term = new byte[buffer.getInt(entry)];
+        buffer.get(entry + 4, term);
+        return term;
+    }
+
+    public PostingIterator postingsAt(int ordinal) {
+        int entry = entryOffset(ordinal);
+        int afterTerm = entry + 4 + buffer.getInt(entry);
+        int count = buffer.getInt(afterTerm);
+        int maxFrequency = buffer.getInt(afterTerm + 4);
+        int postingsOffset = (int) buffer.getLong(afterTerm + 8);
+        return new PostingBlockCodec.BlockPostingIterator(postingsBuffer, postingsOffset, count, maxFrequency);
+    }
+
+    public void forEachDocument(DocumentVisitor visitor) {
+        int position = documentsOffset;
+        for (int i = 0; i < documentCount; i++) {
+            int documentNumber = buffer.getInt(position);
+            long ownerID = buffer.getLong(position + 4);
+            int length = buffer.getInt(position + 12);
+            byte[] path = new byte[length];
+            buffer.get(position + 16, path);
+            visitor.visit(documentNumber, ownerID, new String(path, StandardCharsets.UTF_8));
+            position += 16 + length;
+        }
+    }
+
+    public void forEachDocumentNumber(IntConsumer consumer) {
+        int position = documentsOffset;
+        for (int i = 0; i < documentCount; i++) {
+            consumer.accept(buffer.getInt(position));
+            position += 16 + buffer.getInt(position + 12);
+        }
+    }
+
+    public void forEachTombstone(IntConsumer consumer) {
+        for (int i = 0; i < tombstoneCount; i++) {
+            consumer.accept(buffer.getInt(tombstonesOffset + 4 * i));
+        }
+    }
+
+    public void delete() throws IOException {
+        // The mapping or buffer stays valid for searches still reading it until it is garbage collected
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private int entryOffset(int ordinal) {
+        return (int) buffer.getLong(termIndexOffset + 8 * ordinal);
+    }
+
+    private int compareTerm(int entry, byte[] key) {
+        int length = buffer.getInt(entry);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(entry + 4 + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+}
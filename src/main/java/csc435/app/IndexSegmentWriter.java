@@ -0,0 +1,244 @@
+package csc435.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Writes one immutable index segment, to a file or into a direct buffer. Terms must be added
+// in unsigned UTF-8 byte order, followed by the documents the segment records, then its
+// tombstones. See IndexSegment for the file layout.
+public class IndexSegmentWriter {
+    private final Path file; // Null when writing into a direct buffer
+    private final DirectBufferOutput memory;
+    private final DataOutputStream output;
+    private long position;
+
+    private final List<TermEntry> termEntries = new ArrayList<>();
+    private byte[] lastTerm;
+    private boolean termsWritten;
+    private boolean documentsWritten;
+    private long termEntriesOffset;
+    private long termIndexOffset;
+    private long documentsOffset;
+    private long tombstonesOffset;
+    private int tombstoneCount;
+    private int termCount;
+    private int documentCount;
+    private long postingCount;
+
+    private int[] documentBuffer = new int[1024];
+    private int[] frequencyBuffer = new int[1024];
+    private byte[] encodeBuffer = new byte[PostingBlockCodec.maxEncodedSize(1024)];
+
+    private static class TermEntry {
+        final byte[] term;
+        final int postingCount;
+        final int maxFrequency;
+        final long postingsOffset;
+
+        TermEntry(byte[] term, int postingCount, int maxFrequency, long postingsOffset) {
+            this.term = term;
+            this.postingCount = postingCount;
+            this.maxFrequency = maxFrequency;
+            this.postingsOffset = postingsOffset;
+        }
+    }
+
+    // Grows a direct buffer by doubling. The outgrown buffers are freed once garbage collected;
+    // the JVM collects them early when the direct memory limit is reached.
+    private static class DirectBufferOutput extends OutputStream {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureRemaining(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureRemaining(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        private void ensureRemaining(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            long needed = (long) buffer.position() + length;
+            if (needed > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than 2 GB");
+            }
+            long capacity = Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * buffer.capacity()));
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+            grown.put(buffer.flip());
+            buffer = grown;
+        }
+    }
+
+    public IndexSegmentWriter(Path file) throws IOException {
+        this.file = file;
+        this.memory = null;
+        OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        output.write(new byte[IndexSegment.HEADER_SIZE]); // Filled in by finish
+        position = IndexSegment.HEADER_SIZE;
+    }
+
+    // Writes the segment into off-heap memory; finish returns the buffer holding it
+    public IndexSegmentWriter() throws IOException {
+        this.file = null;
+        this.memory = new DirectBufferOutput();
+        this.output = new DataOutputStream(new BufferedOutputStream(memory, 1 << 16));
+        output.write(new byte[IndexSegment.HEADER_SIZE]);
+        position = IndexSegment.HEADER_SIZE;
+    }
+
+    // Writes the term's postings; terms without postings are skipped
+    public void addTerm(byte[] term, PostingIterator postings) throws IOException {
+        if (termsWritten) {
+            throw new IllegalStateException("Terms must be added before documents");
+        }
+        if (lastTerm != null && Arrays.compareUnsigned(lastTerm, term) >= 0) {
+            throw new IllegalArgumentException("Terms must be added in sorted order");
+        }
+
+        int count = 0;
+        int maxFrequency = 0;
+        for (int doc = postings.next(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = postings.next()) {
+            if (count == documentBuffer.length) {
+                documentBuffer = Arrays.copyOf(documentBuffer, count * 2);
+                frequencyBuffer = Arrays.copyOf(frequencyBuffer, count * 2);
+            }
+            documentBuffer[count] = doc;
+            frequencyBuffer[count] = postings.frequency();
+            maxFrequency = Math.max(maxFrequency, frequencyBuffer[count]);
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        if (encodeBuffer.length < PostingBlockCodec.maxEncodedSize(count)) {
+            encodeBuffer = new byte[PostingBlockCodec.maxEncodedSize(documentBuffer.length)];
+        }
+        int length = PostingBlockCodec.encode(documentBuffer, frequencyBuffer, count, encodeBuffer);
+
+        termEntries.add(new TermEntry(term, count, maxFrequency, position));
+        lastTerm = term;
+        output.write(encodeBuffer, 0, length);
+        position += length;
+        postingCount += count;
+    }
+
+    public void addTerm(String term, PostingIterator postings) throws IOException {
+        addTerm(term.getBytes(StandardCharsets.UTF_8), postings);
+    }
+
+    public void addDocument(int documentNumber, long ownerID, String documentPath) throws IOException {
+        if (documentsWritten) {
+            throw new IllegalStateException("Documents must be added before tombstones");
+        }
+        writeTermDictionary();
+        byte[] path = documentPath.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(documentNumber);
+        output.writeLong(ownerID);
+        output.writeInt(path.length);
+        output.write(path);
+        position += 16 + path.length;
+        documentCount++;
+    }
+
+    public void addTombstone(int documentNumber) throws IOException {
+        writeTermDictionary();
+        if (!documentsWritten) {
+            documentsWritten = true;
+            tombstonesOffset = position;
+        }
+        output.writeInt(documentNumber);
+        position += 4;
+        tombstoneCount++;
+    }
+
+    // Completes the file and forces it to disk; the segment can then be opened. When writing
+    // into memory, returns the direct buffer holding the segment, for IndexSegment.wrap, and
+    // null otherwise.
+    public ByteBuffer finish() throws IOException {
+        writeTermDictionary();
+        if (!documentsWritten) {
+            documentsWritten = true;
+            tombstonesOffset = position;
+        }
+        output.close();
+
+        ByteBuffer header = ByteBuffer.allocate(IndexSegment.HEADER_SIZE);
+        header.putInt(IndexSegment.MAGIC)
+              .putInt(IndexSegment.VERSION)
+              .putInt(documentCount)
+              .putInt(termCount)
+              .putLong(postingCount)
+              .putLong(termEntriesOffset)
+              .putLong(termIndexOffset)
+              .putLong(documentsOffset)
+              .putLong(tombstonesOffset)
+              .putInt(tombstoneCount)
+              .putInt(0)
+              .flip();
+        if (memory != null) {
+            // Copied into a buffer of the exact size unless little of the last one is unused
+            ByteBuffer segment = memory.buffer.flip();
+            if (segment.capacity() - segment.limit() > segment.limit() / 8) {
+                segment = ByteBuffer.allocateDirect(segment.limit()).put(segment).flip();
+            } else {
+                segment = segment.slice();
+            }
+            return segment.put(0, header, 0, header.limit());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        return null;
+    }
+
+    private void writeTermDictionary() throws IOException {
+        if (termsWritten) {
+            return;
+        }
+        termsWritten = true;
+
+        termEntriesOffset = position;
+        long[] entryOffsets = new long[termEntries.size()];
+        for (int i = 0; i < termEntries.size(); i++) {
+            TermEntry entry = termEntries.get(i);
+            entryOffsets[i] = position;
+            output.writeInt(entry.term.length);
+            output.write(entry.term);
+            output.writeInt(entry.postingCount);
+            output.writeInt(entry.maxFrequency);
+            output.writeLong(entry.postingsOffset);
+            position += 20 + entry.term.length;
+        }
+
+        termIndexOffset = position;
+        for (long offset : entryOffsets) {
+            output.writeLong(offset);
+        }
+        position += 8L * entryOffsets.length;
+        documentsOffset = position;
+        termCount = termEntries.size();
+        termEntries.clear();
+    }
+}
@@ -1,109 +1,1280 @@
 package csc435.app;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 
-public class IndexStore {
-    private final Map<String, Long> documentMap = new HashMap<>();
-    private final Map<String, List<DocFreqPair>> termIndex = new HashMap<>();
-    private final Lock docLock = new ReentrantLock();
-    private final Lock indexLock = new ReentrantLock();
-    private long docCounter = 0;
+// Final: the constructors start the maintenance thread and load documents through this
+public final class IndexStore {
+    // Flush the in-memory index once it holds this many postings, or once it is this old
+    private static final long FLUSH_POSTINGS = 2_000_000;
+    private static final long FLUSH_INTERVAL_MILLIS = 30_000;
+    // Merge the smallest run of segments once there are more than this many
+    private static final int MAX_SEGMENTS = 10;
+    private static final int MERGE_WIDTH = 4;
+    private static final long MAX_MERGED_SEGMENT_BYTES = 1L << 30;
+    // Look for segments to compact after this many deletions, and rewrite those in which
+    // at least this fraction of the documents is deleted
+    private static final long COMPACTION_CHECK_DELETIONS = 10_000;
+    private static final double COMPACTION_DELETED_FRACTION = 0.25;
+    // Terms share this many version counters; a collision only costs a needless cache miss
+    private static final int TERM_VERSION_STRIPES = 1 << 16;
+    // The sorted term dictionary of an in-memory index is rebuilt once more terms than this,
+    // and than an eighth of the dictionary, were added since
+    private static final int MAX_UNSORTED_TERMS = 4096;
 
-    // ADDED: track which client owns each document
-    private final Map<Long, Long> docOwnerMap = new HashMap<>();
+    // Concurrent term dictionary: workers indexing different terms never contend,
+    // and each posting list is guarded by its own monitor instead of a global lock.
+    private final ConcurrentHashMap<String, Long> documentMap = new ConcurrentHashMap<>();
+    private final AtomicLong docCounter = new AtomicLong();
+    private final AtomicLong clientCounter = new AtomicLong();
+    private final AtomicLong deletionsSinceCompactionCheck = new AtomicLong();
+    // Identifies this index's contents to clients keeping a manifest of what they sent;
+    // changes whenever the index is cleared or an in-memory index is restarted
+    private volatile String indexID = UUID.randomUUID().toString();
 
-    public static class DocFreqPair {
-        public long documentNumber;
-        public long wordFrequency;
+    // Versions the search cache compares to tell whether a cached result may have changed.
+    // A term's version is bumped after it gains postings. Deleting or replacing a document can
+    // change the results of any term, so it bumps the documents version instead.
+    private final AtomicLongArray termVersions = new AtomicLongArray(TERM_VERSION_STRIPES);
+    private final AtomicLong documentsVersion = new AtomicLong();
+    // Bumped by every update, for wildcard terms, whose matching terms are not known up front
+    private final AtomicLong postingsVersion = new AtomicLong();
 
-        public DocFreqPair(long documentNumber, long wordFrequency) {
-            this.documentNumber = documentNumber;
-            this.wordFrequency = wordFrequency;
+    // Reverse docId -> (path, owner client ID) table for constant-time result lookups
+    private final DocumentTable documentTable = new DocumentTable();
+
+    // Updates go to the active in-memory index, which is periodically frozen and written out
+    // as an immutable segment. Searches read one view and never take a lock.
+    private volatile IndexView view = new IndexView(new MemoryIndex(), null, List.of());
+
+    // Writers share the read lock; freezing the active index takes the write lock so that no
+    // update is half applied to the index being frozen
+    private final ReentrantReadWriteLock updateLock = new ReentrantReadWriteLock();
+    // Time spent waiting for the update lock, for the server's stats
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final LongAdder lockContentions = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    // Held, inside the update lock, while a record is appended to the log and the change stream
+    // and its documents are replaced or deleted, so that records take effect in the order they
+    // are logged and replayed. Postings are added after it is released, in parallel.
+    private final Object recordLock = new Object();
+    // Serializes flushes, merges and clears, the only code that replaces the segment list
+    private final Object maintenanceLock = new Object();
+
+    private final Path dataDirectory;
+    private final IndexManifest manifest;
+    private final ScheduledExecutorService maintenance;
+    private final WriteAheadLog.Durability durability;
+    private long nextLogGeneration;
+    // An off-heap store flushes its in-memory index into segments held in direct buffers
+    private final boolean offHeap;
+    private long nextMemorySegment;
+    // Index updates published to follower servers, or null
+    private volatile ChangeStream changeStream;
+    // Snapshots being read by followers, by ID; dropped once read in full or left idle
+    private static final long SNAPSHOT_IDLE_MILLIS = 60_000;
+    private final ConcurrentHashMap<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong nextSnapshotID = new AtomicLong(1);
+
+    // In-memory part of the index: postings added since the last flush, and the write-ahead
+    // log holding the same batches until they are in a segment
+    private static class MemoryIndex {
+        final WriteAheadLog log;
+        final long logGeneration;
+        final ConcurrentHashMap<String, PostingList> termIndex = new ConcurrentHashMap<>();
+        // Sorted dictionary of the terms for wildcard expansion, alongside the hash lookup.
+        // New terms wait in a skip list until there are enough of them to rebuild it.
+        volatile TermDictionary sortedTerms = TermDictionary.EMPTY;
+        final ConcurrentSkipListSet<String> unsortedTerms = new ConcurrentSkipListSet<>();
+        final AtomicInteger unsortedCount = new AtomicInteger(); // The skip list's size is not constant time
+        final AtomicBoolean sortingTerms = new AtomicBoolean();
+        // Documents created since the last flush, written with the segment
+        final Set<Integer> documents = ConcurrentHashMap.newKeySet();
+        // Documents deleted or replaced since the last flush, possibly held by older segments
+        final Set<Integer> tombstones = ConcurrentHashMap.newKeySet();
+        final AtomicLong postingCount = new AtomicLong();
+        final long createdMillis = System.currentTimeMillis();
+
+        MemoryIndex() {
+            this(null, 0);
+        }
+
+        MemoryIndex(WriteAheadLog log, long logGeneration) {
+            this.log = log;
+            this.logGeneration = logGeneration;
+        }
+
+        boolean isEmpty() {
+            return documents.isEmpty() && termIndex.isEmpty() && tombstones.isEmpty();
+        }
+
+        // Posting list of the term, created and queued for the sorted dictionary if it is new
+        PostingList postings(String term) {
+            return termIndex.computeIfAbsent(term, key -> {
+                unsortedTerms.add(key);
+                unsortedCount.incrementAndGet();
+                return new PostingList();
+            });
+        }
+
+        // The dictionary and the unsorted terms are both read from the pattern's prefix on
+        void expand(TermPattern pattern, int limit, Collection<String> matches) {
+            sortedTerms.expand(pattern, limit, matches);
+            int found = 0;
+            for (String term : unsortedTerms.tailSet(pattern.prefix())) {
+                if (found >= limit || !term.startsWith(pattern.prefix())) {
+                    break;
+                }
+                if (pattern.matches(term)) {
+                    matches.add(term);
+                    found++;
+                }
+            }
+        }
+
+        // Called by writers after each update. Merging the unsorted terms in only once they
+        // outnumber an eighth of the dictionary keeps the cost constant per term; one writer
+        // merges while the others carry on.
+        void sortNewTerms() {
+            TermDictionary dictionary = sortedTerms;
+            if (unsortedCount.get() <= Math.max(MAX_UNSORTED_TERMS, dictionary.size() / 8)
+                    || !sortingTerms.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                List<String> added = new ArrayList<>(unsortedTerms);
+                sortedTerms = dictionary.with(added);
+                // Removed only once published, so a term is always in one or the other
+                for (String term : added) {
+                    unsortedTerms.remove(term);
+                }
+                unsortedCount.addAndGet(-added.size());
+            } finally {
+                sortingTerms.set(false);
+            }
         }
     }
 
+    private static class IndexView {
+        final MemoryIndex active;
+        final MemoryIndex flushing; // Frozen index being written out, or null
+        final List<IndexSegment> segments; // Oldest first
+
+        IndexView(MemoryIndex active, MemoryIndex flushing, List<IndexSegment> segments) {
+            this.active = active;
+            this.flushing = flushing;
+            this.segments = segments;
+        }
+    }
+
+    // Purely in-memory index, lost when the server stops
+    public IndexStore() {
+        this(false);
+    }
+
+    private IndexStore(boolean offHeap) {
+        this.dataDirectory = null;
+        this.manifest = null;
+        this.durability = WriteAheadLog.Durability.NONE;
+        this.offHeap = offHeap;
+        this.maintenance = offHeap ? startMaintenance() : null;
+    }
+
+    // In-memory index that keeps only recent updates on the heap: they are flushed and merged
+    // like a persistent index, but into segments held in direct buffers. The heap then holds
+    // little more than the document table, so a large index no longer means long full GCs.
+    public static IndexStore offHeap() {
+        return new IndexStore(true);
+    }
+
+    // Persistent index: opens the segments in dataDirectory and flushes new ones in the background
+    public IndexStore(Path dataDirectory) throws IOException {
+        this(dataDirectory, WriteAheadLog.Durability.BATCHED);
+    }
+
+    public IndexStore(Path dataDirectory, WriteAheadLog.Durability durability) throws IOException {
+        long start = System.nanoTime();
+        this.dataDirectory = dataDirectory;
+        this.durability = durability;
+        this.offHeap = false;
+        Files.createDirectories(dataDirectory);
+        this.manifest = IndexManifest.load(dataDirectory);
+
+        List<IndexSegment> segments = new ArrayList<>();
+        for (String name : manifest.getSegments()) {
+            segments.add(IndexSegment.open(dataDirectory.resolve(name)));
+        }
+        deleteUnlistedFiles(manifest.getSegments());
+        if (manifest.getIndexID() == null) {
+            manifest.setIndexID(indexID);
+            manifest.write();
+        }
+        indexID = manifest.getIndexID();
+
+        // Tombstones are applied once every document is loaded, since they may name
+        // documents of any older segment
+        long postings = 0;
+        for (IndexSegment segment : segments) {
+            segment.forEachDocument(this::loadDocument);
+            postings += segment.getPostingCount();
+        }
+        for (IndexSegment segment : segments) {
+            segment.forEachTombstone(this::removeDocument);
+        }
+        view = new IndexView(new MemoryIndex(), null, List.copyOf(segments));
+
+        System.out.printf("Opened %d index segments (%d documents, %d postings) in %.1f ms.%n",
+                segments.size(), documentMap.size(), postings, (System.nanoTime() - start) / 1e6);
+
+        replayLogs();
+        maintenance = startMaintenance();
+    }
+
+    private ScheduledExecutorService startMaintenance() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runMaintenance, 1, 1, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    // Re-applies the batches acknowledged since the last flush. They stay in the in-memory index,
+    // and their logs are kept until it is flushed.
+    private void replayLogs() throws IOException {
+        long start = System.nanoTime();
+        nextLogGeneration = manifest.getFirstLog();
+        int logs = 0;
+        int batches = 0;
+        for (Path file : listLogs()) {
+            long generation = logGeneration(file);
+            if (generation < manifest.getFirstLog()) {
+                Files.delete(file); // Already flushed to a segment
+                continue;
+            }
+            batches += WriteAheadLog.replay(file, new WriteAheadLog.RecordConsumer() {
+                public void index(List<IndexRequest> documents) {
+                    for (IndexRequest document : documents) {
+                        clientCounter.accumulateAndGet(document.clientID, Math::max);
+                    }
+                    applyBatch(documents, view.active);
+                }
+
+                public void delete(List<String> documentPaths) {
+                    applyDeletes(documentPaths, view.active);
+                }
+            });
+            nextLogGeneration = Math.max(nextLogGeneration, generation + 1);
+            logs++;
+        }
+        view = new IndexView(newMemoryIndex(view.active), null, view.segments);
+        if (batches > 0) {
+            System.out.printf("Replayed %d index batches from %d logs in %.1f ms.%n",
+                    batches, logs, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // A fresh in-memory index with its own log. The replayed contents of the startup index,
+    // if any, are carried over; their older logs stay on disk until the next flush.
+    private MemoryIndex newMemoryIndex(MemoryIndex previous) throws IOException {
+        long generation = nextLogGeneration++;
+        WriteAheadLog log = new WriteAheadLog(dataDirectory.resolve(String.format("log-%08d.wal", generation)), durability);
+        MemoryIndex index = new MemoryIndex(log, generation);
+        if (previous != null) {
+            index.termIndex.putAll(previous.termIndex);
+            index.sortedTerms = previous.sortedTerms;
+            index.unsortedTerms.addAll(previous.unsortedTerms);
+            index.unsortedCount.set(previous.unsortedCount.get());
+            index.documents.addAll(previous.documents);
+            index.tombstones.addAll(previous.tombstones);
+            index.postingCount.set(previous.postingCount.get());
+        }
+        return index;
+    }
+
+    private List<Path> listLogs() throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDirectory, "log-*.wal")) {
+            for (Path file : files) {
+                logs.add(file);
+            }
+        }
+        logs.sort(Comparator.comparingLong(IndexStore::logGeneration));
+        return logs;
+    }
+
+    private static long logGeneration(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("log-".length(), name.length() - ".wal".length()));
+    }
+
+    private void deleteLogsBefore(long generation) throws IOException {
+        for (Path file : listLogs()) {
+            if (logGeneration(file) < generation) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void loadDocument(int documentNumber, long ownerID, String documentPath) {
+        documentTable.put(documentNumber, documentPath, ownerID);
+        // Every version of a path gets a new number, so the highest one is the current version
+        documentMap.merge(documentPath, (long) documentNumber, Math::max);
+        docCounter.accumulateAndGet(documentNumber, Math::max);
+        clientCounter.accumulateAndGet(ownerID, Math::max);
+    }
+
+    // Drops a document from the tables; its postings stay until the segment holding them is rewritten
+    private boolean removeDocument(long documentNumber) {
+        String documentPath = documentTable.getPath(documentNumber);
+        if (documentPath == null) {
+            return false;
+        }
+        documentTable.remove(documentNumber);
+        documentMap.remove(documentPath, documentNumber);
+        return true;
+    }
+
+    public String getIndexID() {
+        return indexID;
+    }
+
+    // Every update applied from now on is also appended to the change stream
+    public void setChangeStream(ChangeStream changeStream) {
+        this.changeStream = changeStream;
+    }
+
+    public ChangeStream getChangeStream() {
+        return changeStream;
+    }
+
+    // Client IDs continue after the highest owner found in the segments and the replayed logs,
+    // so documents loaded from disk are never attributed to a newly registered client
+    public long nextClientID() {
+        return clientCounter.incrementAndGet();
+    }
+
     // Clears the index before re-indexing to prevent duplicate counts
     public void clearIndex() {
-        docLock.lock();
-        indexLock.lock();
+        synchronized (maintenanceLock) {
+            try {
+                IndexView cleared;
+                lock(updateLock.writeLock());
+                try {
+                    documentMap.clear();
+                    docCounter.set(0);
+                    documentTable.clear();
+                    indexID = UUID.randomUUID().toString();
+                    cleared = view;
+                    MemoryIndex active = manifest == null ? new MemoryIndex() : newMemoryIndex(null);
+                    view = new IndexView(active, null, List.of());
+                    documentsVersion.incrementAndGet();
+                } finally {
+                    updateLock.writeLock().unlock();
+                }
+                if (manifest != null) {
+                    cleared.active.log.close();
+                    manifest.setSegments(List.of());
+                    manifest.setFirstLog(view.active.logGeneration);
+                    manifest.setIndexID(indexID);
+                    manifest.write();
+                    for (IndexSegment segment : cleared.segments) {
+                        segment.delete();
+                    }
+                    deleteLogsBefore(view.active.logGeneration);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to clear index in " + dataDirectory, e);
+            }
+        }
+        System.out.println("Index cleared before server start.");
+    }
+
+    // Re-indexing a path replaces the document: the new version gets a new document number,
+    // owned by the indexing client, and the old number is tombstoned so its postings no longer match
+    public long putDocument(String documentPath, long clientID) {
+        lock(updateLock.readLock());
         try {
-            documentMap.clear();
-            termIndex.clear();
-            docCounter = 0;
-            docOwnerMap.clear(); // ADDED: Clear owners as well
-            System.out.println("Index cleared before server start.");
+            MemoryIndex active = view.active;
+            boolean[] replaced = new boolean[1];
+            long documentNumber = documentMap.compute(documentPath, (k, previous) -> {
+                if (previous != null) {
+                    documentTable.remove(previous);
+                    active.tombstones.add(Math.toIntExact(previous));
+                    deletionsSinceCompactionCheck.incrementAndGet();
+                    replaced[0] = true;
+                }
+                long docNum = docCounter.incrementAndGet();
+                documentTable.put(docNum, k, clientID);
+                return docNum;
+            });
+            active.documents.add(Math.toIntExact(documentNumber));
+            if (replaced[0]) {
+                documentsVersion.incrementAndGet();
+            }
+            return documentNumber;
         } finally {
-            indexLock.unlock();
-            docLock.unlock();
+            updateLock.readLock().unlock();
         }
     }
 
-    // Ensures documents are indexed only once
-    public long putDocument(String documentPath) {
-        docLock.lock();
+    // Removes the documents indexed under these paths and returns how many existed
+    public int deleteDocuments(List<String> documentPaths) {
+        ChangeStream stream = changeStream;
+        byte[] record = dataDirectory != null || stream != null ? WriteAheadLog.encodeDeletes(documentPaths) : null;
+        WriteAheadLog log;
+        long logPosition = 0;
+        int deleted;
+        lock(updateLock.readLock());
         try {
-            return documentMap.computeIfAbsent(documentPath, k -> ++docCounter);
+            MemoryIndex active = view.active;
+            log = active.log;
+            synchronized (recordLock) {
+                if (log != null) {
+                    logPosition = log.append(record);
+                }
+                if (stream != null) {
+                    stream.append(record);
+                }
+                deleted = applyDeletes(documentPaths, active);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to log deletion", e);
         } finally {
-            docLock.unlock();
+            updateLock.readLock().unlock();
+        }
+        syncLog(log, logPosition);
+        return deleted;
+    }
+
+    private int applyDeletes(List<String> documentPaths, MemoryIndex active) {
+        int deleted = 0;
+        for (String documentPath : documentPaths) {
+            Long documentNumber = documentMap.get(documentPath);
+            if (documentNumber != null && removeDocument(documentNumber)) {
+                active.tombstones.add(Math.toIntExact(documentNumber));
+                deleted++;
+            }
         }
+        deletionsSinceCompactionCheck.addAndGet(deleted);
+        if (deleted > 0) {
+            documentsVersion.incrementAndGet();
+        }
+        return deleted;
+    }
+
+    // False once the document has been deleted or replaced by a newer version
+    public boolean isLive(long documentNumber) {
+        return documentTable.getPath(documentNumber) != null;
     }
 
     public String getDocument(long documentNumber) {
-        docLock.lock();
+        String documentPath = documentTable.getPath(documentNumber);
+        return documentPath == null ? "UNKNOWN_DOCUMENT" : documentPath;
+    }
+
+    public long getDocumentOwner(long documentNumber) {
+        return documentTable.getOwner(documentNumber);
+    }
+
+    // For the benchmarks, which measure the index without the log: neither logged nor published
+    // to followers, so a persistent store only keeps these updates once they are flushed.
+    // Servers go through updateIndexBatch.
+    void updateIndex(long documentNumber, Map<String, Long> wordFrequencies) {
+        int docNum = Math.toIntExact(documentNumber);
+        MemoryIndex active;
+        lock(updateLock.readLock());
+        try {
+            active = view.active;
+            for (Map.Entry<String, Long> entry : wordFrequencies.entrySet()) {
+                // Only the posting list of this term is locked, so other terms index in parallel
+                active.postings(entry.getKey()).add(docNum, entry.getValue());
+            }
+            active.postingCount.addAndGet(wordFrequencies.size());
+            termsChanged(wordFrequencies.keySet());
+        } finally {
+            updateLock.readLock().unlock();
+        }
+        // Outside the lock, so that a flush never waits for the terms to be sorted
+        active.sortNewTerms();
+    }
+
+    // Logs the batch, applies it, and returns once the log is as durable as configured.
+    // The fsync is waited for outside the update lock so that concurrent batches share it.
+    // The log and the change stream get the same record, encoded before taking the lock.
+    public void updateIndexBatch(List<IndexRequest> documents) {
+        ChangeStream stream = changeStream;
+        byte[] record = dataDirectory != null || stream != null ? WriteAheadLog.encodeBatch(documents) : null;
+        WriteAheadLog log;
+        long logPosition = 0;
+        MemoryIndex active;
+        lock(updateLock.readLock());
         try {
-            for (Map.Entry<String, Long> entry : documentMap.entrySet()) {
-                if (entry.getValue() == documentNumber) {
-                    return entry.getKey();
+            active = view.active;
+            log = active.log;
+            int[] documentNumbers;
+            synchronized (recordLock) {
+                if (log != null) {
+                    logPosition = log.append(record);
+                }
+                if (stream != null) {
+                    stream.append(record);
                 }
+                documentNumbers = putDocuments(documents);
             }
-            return "UNKNOWN_DOCUMENT";
+            addPostings(documents, documentNumbers, active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to log index batch", e);
         } finally {
-            docLock.unlock();
+            updateLock.readLock().unlock();
+        }
+
+        syncLog(log, logPosition);
+        active.sortNewTerms();
+    }
+
+    private static void syncLog(WriteAheadLog log, long logPosition) {
+        if (log != null) {
+            try {
+                log.sync(logPosition);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync index log", e);
+            }
+        }
+    }
+
+    private void applyBatch(List<IndexRequest> documents, MemoryIndex active) {
+        addPostings(documents, putDocuments(documents), active);
+    }
+
+    // New document numbers for the batch's documents, replacing earlier versions of their paths
+    private int[] putDocuments(List<IndexRequest> documents) {
+        int[] documentNumbers = new int[documents.size()];
+        for (int i = 0; i < documentNumbers.length; i++) {
+            IndexRequest document = documents.get(i);
+            documentNumbers[i] = Math.toIntExact(putDocument(document.documentPath, document.clientID));
         }
+        return documentNumbers;
     }
 
-    public void updateIndex(long documentNumber, Map<String, Long> wordFrequencies) {
-        indexLock.lock();
+    // Adds a whole batch of postings in one pass: they are grouped by term first, so each
+    // term's posting list is locked once per batch instead of once per document
+    private void addPostings(List<IndexRequest> documents, int[] documentNumbers, MemoryIndex active) {
+        Map<String, PendingPostings> postingsByTerm = new HashMap<>();
+        long postingCount = 0;
+        for (int i = 0; i < documentNumbers.length; i++) {
+            IndexRequest document = documents.get(i);
+            int docNum = documentNumbers[i];
+            for (Map.Entry<String, Long> entry : document.wordFrequencies.entrySet()) {
+                postingsByTerm.computeIfAbsent(entry.getKey(), k -> new PendingPostings()).add(docNum, entry.getValue());
+            }
+            postingCount += document.wordFrequencies.size();
+        }
+
+        for (Map.Entry<String, PendingPostings> entry : postingsByTerm.entrySet()) {
+            PendingPostings pending = entry.getValue();
+            active.postings(entry.getKey())
+                    .addAll(pending.documentNumbers, pending.frequencies, pending.size);
+        }
+        active.postingCount.addAndGet(postingCount);
+        termsChanged(postingsByTerm.keySet());
+    }
+
+    // Called after the postings are added, so a search that read the old version cannot have
+    // seen them and a search that reads the new version sees all of them
+    private void termsChanged(Collection<String> terms) {
+        for (String term : terms) {
+            termVersions.incrementAndGet(termVersionStripe(term));
+        }
+        postingsVersion.incrementAndGet();
+    }
+
+    private static int termVersionStripe(String term) {
+        int hash = term.hashCode();
+        return (hash ^ (hash >>> 16)) & (TERM_VERSION_STRIPES - 1);
+    }
+
+    // Any update may add a term a wildcard term matches, so those change with every update
+    public long getTermVersion(String term) {
+        if (TermPattern.isPattern(term)) {
+            return postingsVersion.get();
+        }
+        return termVersions.get(termVersionStripe(term));
+    }
+
+    public long getDocumentsVersion() {
+        return documentsVersion.get();
+    }
+
+    private static class PendingPostings {
+        int[] documentNumbers = new int[4];
+        long[] frequencies = new long[4];
+        int size;
+
+        void add(int documentNumber, long frequency) {
+            if (size == documentNumbers.length) {
+                documentNumbers = Arrays.copyOf(documentNumbers, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documentNumbers[size] = documentNumber;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+
+    // Postings of the term across the on-disk segments and the in-memory index
+    public PostingIterator lookupIndex(String term) {
+        return lookupIndex(view, term);
+    }
+
+    private static PostingIterator lookupIndex(IndexView current, String term) {
+        List<PostingIterator> sources = new ArrayList<>(current.segments.size() + 2);
+        for (IndexSegment segment : current.segments) {
+            PostingIterator postings = segment.postings(term);
+            if (postings != null) {
+                sources.add(postings);
+            }
+        }
+        addMemoryPostings(current.flushing, term, sources);
+        addMemoryPostings(current.active, term, sources);
+        return MergingPostingIterator.of(sources);
+    }
+
+    private static void addMemoryPostings(MemoryIndex index, String term, List<PostingIterator> sources) {
+        PostingList postings = index == null ? null : index.termIndex.get(term);
+        if (postings != null) {
+            sources.add(postings.iterator());
+        }
+    }
+
+    // Terms matching a wildcard pattern (see TermPattern) across the segments and the in-memory
+    // index, in sorted order; at most limit of them, the first ones in sorted order
+    public List<String> expandTerms(String pattern, int limit) {
+        return new ArrayList<>(expandTerms(view, new TermPattern(pattern), limit));
+    }
+
+    private static NavigableSet<String> expandTerms(IndexView current, TermPattern pattern, int limit) {
+        TreeSet<String> matches = new TreeSet<>();
+        for (IndexSegment segment : current.segments) {
+            segment.expand(pattern, limit, matches);
+        }
+        if (current.flushing != null) {
+            current.flushing.expand(pattern, limit, matches);
+        }
+        current.active.expand(pattern, limit, matches);
+        while (matches.size() > limit) {
+            matches.pollLast();
+        }
+        return matches;
+    }
+
+    // Postings of the terms matching a wildcard pattern, at most limit terms, merged into one
+    // list as if they were a single term: a document's frequency is the sum over the terms
+    public PostingIterator lookupPattern(String pattern, int limit) {
+        IndexView current = view;
+        List<PostingIterator> sources = new ArrayList<>();
+        for (String term : expandTerms(current, new TermPattern(pattern), limit)) {
+            for (IndexSegment segment : current.segments) {
+                PostingIterator postings = segment.postings(term);
+                if (postings != null) {
+                    sources.add(postings);
+                }
+            }
+            addMemoryPostings(current.flushing, term, sources);
+            addMemoryPostings(current.active, term, sources);
+        }
+        return UnionPostingIterator.of(sources);
+    }
+
+    public interface SnapshotConsumer {
+        // Called once per term that has live postings, with the iterator on the first of them
+        void postings(String term, PostingIterator postings);
+
+        void document(int documentNumber, long ownerID, String documentPath);
+    }
+
+    // A copy of the index read a piece at a time, so that a follower can load it over many
+    // requests without the whole copy being held in memory. It includes every change up to
+    // sequence. Updates keep running while it is read, so it may also contain some later
+    // changes, even half-applied ones; replaying the stream from sequence repairs them, since
+    // re-indexing a path replaces it and deleting a path twice is harmless. Postings come
+    // first and documents last, so every document's latest version is included.
+    public class Snapshot {
+        public final long snapshotID;
+        public final long sequence;
+        public final long startNanos = System.nanoTime();
+        private final IndexView view;
+        private final Iterator<String> terms;
+        private Iterator<Map.Entry<String, Long>> documents; // Once every term was read
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private Snapshot(long snapshotID, long sequence, IndexView view, Set<String> terms) {
+            this.snapshotID = snapshotID;
+            this.sequence = sequence;
+            this.view = view;
+            this.terms = terms.iterator();
+        }
+
+        // Feeds entries to the consumer until full returns true or the copy is complete, and
+        // returns whether entries remain. A complete snapshot is forgotten.
+        public synchronized boolean read(SnapshotConsumer consumer, BooleanSupplier full) {
+            lastUsedMillis = System.currentTimeMillis();
+            while (terms.hasNext()) {
+                if (full.getAsBoolean()) {
+                    return true;
+                }
+                String term = terms.next();
+                PostingIterator postings = new LivePostingIterator(lookupIndex(view, term));
+                if (postings.next() != PostingIterator.NO_MORE_DOCUMENTS) {
+                    consumer.postings(term, postings);
+                }
+            }
+            if (documents == null) {
+                documents = documentMap.entrySet().iterator();
+            }
+            while (documents.hasNext()) {
+                if (full.getAsBoolean()) {
+                    return true;
+                }
+                Map.Entry<String, Long> entry = documents.next();
+                long documentNumber = entry.getValue();
+                long ownerID = documentTable.getOwner(documentNumber);
+                if (ownerID != -1) {
+                    consumer.document(Math.toIntExact(documentNumber), ownerID, entry.getKey());
+                }
+            }
+            snapshots.remove(snapshotID);
+            return false;
+        }
+    }
+
+    // Starts a snapshot at the change stream's current sequence number
+    public Snapshot openSnapshot() {
+        expireSnapshots();
+        IndexView current;
+        long sequence;
+        lock(updateLock.writeLock());
         try {
-            for (Map.Entry<String, Long> entry : wordFrequencies.entrySet()) {
-                List<DocFreqPair> docList = termIndex
-                        .computeIfAbsent(entry.getKey(), k -> Collections.synchronizedList(new ArrayList<>()));
-
-                boolean found = false;
-                for (DocFreqPair pair : docList) {
-                    if (pair.documentNumber == documentNumber) {
-                        pair.wordFrequency += entry.getValue(); // Merge frequency
-                        found = true;
-                        break;
+            // Every change up to this sequence number has been applied in full
+            current = view;
+            sequence = changeStream == null ? 0 : changeStream.getSequence();
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+
+        Set<String> terms = new HashSet<>();
+        for (IndexSegment segment : current.segments) {
+            for (int ordinal = 0; ordinal < segment.getTermCount(); ordinal++) {
+                terms.add(new String(segment.termAt(ordinal), StandardCharsets.UTF_8));
+            }
+        }
+        if (current.flushing != null) {
+            terms.addAll(current.flushing.termIndex.keySet());
+        }
+        terms.addAll(current.active.termIndex.keySet());
+        Snapshot snapshot = new Snapshot(nextSnapshotID.getAndIncrement(), sequence, current, terms);
+        snapshots.put(snapshot.snapshotID, snapshot);
+        return snapshot;
+    }
+
+    // The snapshot being read under this ID, or null if it is complete or was left idle
+    public Snapshot getSnapshot(long snapshotID) {
+        expireSnapshots();
+        return snapshots.get(snapshotID);
+    }
+
+    private void expireSnapshots() {
+        long idleSince = System.currentTimeMillis() - SNAPSHOT_IDLE_MILLIS;
+        snapshots.values().removeIf(snapshot -> snapshot.lastUsedMillis < idleSince);
+    }
+
+    // Replaces the contents of an in-memory index with a snapshot taken by another server.
+    // Documents keep the other server's numbers; later updates are numbered after them.
+    public SnapshotConsumer loadSnapshot() {
+        if (dataDirectory != null) {
+            throw new IllegalStateException("Snapshots can only be loaded into an in-memory index");
+        }
+        clearIndex();
+        MemoryIndex active = view.active;
+        return new SnapshotConsumer() {
+            private int[] documentNumbers = new int[64];
+            private long[] frequencies = new long[64];
+
+            public void postings(String term, PostingIterator postings) {
+                int count = 0;
+                for (int doc = postings.documentNumber(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = postings.next()) {
+                    if (count == documentNumbers.length) {
+                        documentNumbers = Arrays.copyOf(documentNumbers, count * 2);
+                        frequencies = Arrays.copyOf(frequencies, count * 2);
                     }
+                    documentNumbers[count] = doc;
+                    frequencies[count] = postings.frequency();
+                    count++;
+                }
+                active.postings(term).addAll(documentNumbers, frequencies, count);
+                active.postingCount.addAndGet(count);
+                termsChanged(List.of(term));
+            }
+
+            public void document(int documentNumber, long ownerID, String documentPath) {
+                loadDocument(documentNumber, ownerID, documentPath);
+                active.documents.add(documentNumber);
+                documentsVersion.incrementAndGet(); // Its postings were already loaded
+            }
+        };
+    }
+
+    public int getSegmentCount() {
+        return view.segments.size();
+    }
+
+    // Acquires the update lock, counting the time spent waiting for it. An acquisition that
+    // waited more than a few microseconds counts as contended.
+    private void lock(Lock lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        lockAcquisitions.increment();
+        if (waited > 5_000) {
+            lockContentions.increment();
+            lockWaitNanos.add(waited);
+        }
+    }
+
+    public long getLockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    public long getLockContentions() {
+        return lockContentions.sum();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    // Size of the index at one moment, for the server's stats
+    public static class Statistics {
+        public long documents;
+        public long memoryTerms;
+        public long memoryPostings;
+        public long memoryBytes; // Estimated: the posting arrays only
+        public int segments;
+        public long segmentTerms; // Summed over segments, so a term in several counts several times
+        public long segmentPostings;
+        public long segmentBytes;
+    }
+
+    public Statistics getStatistics() {
+        IndexView current = view;
+        Statistics statistics = new Statistics();
+        statistics.documents = documentMap.size();
+        for (MemoryIndex index : current.flushing == null
+                ? List.of(current.active) : List.of(current.active, current.flushing)) {
+            statistics.memoryTerms += index.termIndex.size();
+            statistics.memoryPostings += index.postingCount.get();
+        }
+        // A document number and a frequency, both ints, per posting
+        statistics.memoryBytes = statistics.memoryPostings * 8;
+        statistics.segments = current.segments.size();
+        for (IndexSegment segment : current.segments) {
+            statistics.segmentTerms += segment.getTermCount();
+            statistics.segmentPostings += segment.getPostingCount();
+            statistics.segmentBytes += segment.getSizeInBytes();
+        }
+        return statistics;
+    }
+
+    // Number of fsyncs the current log has done, to show how well group commit batches them
+    public long getLogSyncCount() {
+        WriteAheadLog log = view.active.log;
+        return log == null ? 0 : log.getSyncCount();
+    }
+
+    // Writes the in-memory index out as a new segment; a no-op for an on-heap in-memory store
+    public void flush() throws IOException {
+        if (dataDirectory == null && !offHeap) {
+            return;
+        }
+        synchronized (maintenanceLock) {
+            MemoryIndex frozen;
+            lock(updateLock.writeLock());
+            try {
+                IndexView current = view;
+                if (current.active.isEmpty()) {
+                    return;
+                }
+                frozen = current.active;
+                view = new IndexView(manifest == null ? new MemoryIndex() : newMemoryIndex(null), frozen, current.segments);
+            } finally {
+                updateLock.writeLock().unlock();
+            }
+            // No batch can be appended to the frozen log any more
+            if (frozen.log != null) {
+                frozen.log.close();
+            }
+
+            long start = System.nanoTime();
+            String name = newSegmentName();
+            IndexSegment segment = writeSegment(name, writer -> {
+                List<byte[]> terms = new ArrayList<>(frozen.termIndex.size());
+                for (String term : frozen.termIndex.keySet()) {
+                    terms.add(term.getBytes(StandardCharsets.UTF_8));
+                }
+                terms.sort(Arrays::compareUnsigned);
+                for (byte[] term : terms) {
+                    PostingIterator postings = frozen.termIndex.get(new String(term, StandardCharsets.UTF_8)).iterator();
+                    writer.addTerm(term, new LivePostingIterator(postings));
                 }
 
-                if (!found) {
-                    docList.add(new DocFreqPair(documentNumber, entry.getValue()));
+                // Documents already deleted again are left out along with their postings
+                Integer[] documents = frozen.documents.toArray(new Integer[0]);
+                Arrays.sort(documents);
+                for (int documentNumber : documents) {
+                    String documentPath = documentTable.getPath(documentNumber);
+                    if (documentPath != null) {
+                        writer.addDocument(documentNumber, documentTable.getOwner(documentNumber), documentPath);
+                    }
                 }
+                Integer[] tombstones = frozen.tombstones.toArray(new Integer[0]);
+                Arrays.sort(tombstones);
+                for (int documentNumber : tombstones) {
+                    writer.addTombstone(documentNumber);
+                }
+            });
+
+            List<IndexSegment> segments = new ArrayList<>(view.segments);
+            segments.add(segment);
+            if (manifest != null) {
+                manifest.setFirstLog(view.active.logGeneration);
             }
-        } finally {
-            indexLock.unlock();
+            publishSegments(segments);
+            if (manifest != null) {
+                deleteLogsBefore(manifest.getFirstLog());
+            }
+            System.out.printf("Flushed %s (%d terms, %d documents) in %.1f ms.%n", name,
+                    segment.getTermCount(), segment.getDocumentCount(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Stops background maintenance and flushes whatever is still in memory to disk
+    public void close() {
+        if (maintenance == null) {
+            return;
+        }
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(30, TimeUnit.SECONDS);
+            if (dataDirectory == null) {
+                return; // Nothing of an off-heap store outlives it
+            }
+            flush();
+            view.active.log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Failed to flush index on close: " + e.getMessage());
+        }
+    }
+
+    private void runMaintenance() {
+        try {
+            MemoryIndex active = view.active;
+            if (active.postingCount.get() >= FLUSH_POSTINGS
+                    || (!active.isEmpty() && System.currentTimeMillis() - active.createdMillis >= FLUSH_INTERVAL_MILLIS)) {
+                flush();
+            }
+            maybeMerge();
+        } catch (IOException | RuntimeException e) {
+            // Keep the scheduler alive; the next run retries
+            System.err.println("Index maintenance failed: " + e.getMessage());
         }
     }
 
-    public List<DocFreqPair> lookupIndex(String term) {
-        indexLock.lock();
+    // Merges the adjacent run of segments with the smallest total size, so the segment count
+    // and the number of lookups per term stay bounded. Deleted documents are dropped on the way.
+    private void maybeMerge() throws IOException {
+        synchronized (maintenanceLock) {
+            List<IndexSegment> segments = view.segments;
+            if (segments.size() <= MAX_SEGMENTS) {
+                maybeCompact();
+                return;
+            }
+
+            int bestStart = -1;
+            long bestSize = Long.MAX_VALUE;
+            for (int i = 0; i + MERGE_WIDTH <= segments.size(); i++) {
+                long size = 0;
+                for (int j = i; j < i + MERGE_WIDTH; j++) {
+                    size += segments.get(j).getSizeInBytes();
+                }
+                if (size < bestSize) {
+                    bestSize = size;
+                    bestStart = i;
+                }
+            }
+            if (bestSize > MAX_MERGED_SEGMENT_BYTES) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            IndexSegment merged = rewriteSegments(bestStart, bestStart + MERGE_WIDTH);
+            System.out.printf("Merged %d segments into %s in %.1f ms.%n", MERGE_WIDTH, merged.getName(),
+                    (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Rewrites segments in which many documents have been deleted or replaced, so their postings
+    // stop taking space and search time. Only checked once enough deletions have accumulated.
+    private void maybeCompact() throws IOException {
+        if (deletionsSinceCompactionCheck.get() < COMPACTION_CHECK_DELETIONS) {
+            return;
+        }
+        deletionsSinceCompactionCheck.set(0);
+
+        for (int i = 0; i < view.segments.size(); i++) {
+            IndexSegment segment = view.segments.get(i);
+            int[] deleted = new int[1];
+            segment.forEachDocumentNumber(documentNumber -> {
+                if (!isLive(documentNumber)) {
+                    deleted[0]++;
+                }
+            });
+            if (deleted[0] > 0 && deleted[0] >= COMPACTION_DELETED_FRACTION * segment.getDocumentCount()) {
+                long start = System.nanoTime();
+                IndexSegment compacted = rewriteSegments(i, i + 1);
+                System.out.printf("Compacted %s into %s, dropping %d deleted documents, in %.1f ms.%n",
+                        segment.getName(), compacted.getName(), deleted[0], (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    // Replaces segments [from, to) with one segment holding their live documents
+    private IndexSegment rewriteSegments(int from, int to) throws IOException {
+        List<IndexSegment> segments = view.segments;
+        List<IndexSegment> inputs = segments.subList(from, to);
+        IndexSegment merged = writeSegment(newSegmentName(), writer -> mergeSegments(inputs, writer));
+
+        List<IndexSegment> remaining = new ArrayList<>(segments.subList(0, from));
+        remaining.add(merged);
+        remaining.addAll(segments.subList(to, segments.size()));
+        publishSegments(remaining);
+        for (IndexSegment input : inputs) {
+            input.delete();
+        }
+        return merged;
+    }
+
+    private static class TermCursor {
+        final IndexSegment segment;
+        int ordinal;
+        byte[] term;
+
+        TermCursor(IndexSegment segment) {
+            this.segment = segment;
+        }
+
+        boolean advance() {
+            if (ordinal >= segment.getTermCount()) {
+                return false;
+            }
+            term = segment.termAt(ordinal++);
+            return true;
+        }
+    }
+
+    private void mergeSegments(List<IndexSegment> inputs, IndexSegmentWriter writer) throws IOException {
+        PriorityQueue<TermCursor> cursors = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.term, b.term));
+        for (IndexSegment input : inputs) {
+            TermCursor cursor = new TermCursor(input);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        List<TermCursor> sameTerm = new ArrayList<>();
+        List<PostingIterator> postings = new ArrayList<>();
+        while (!cursors.isEmpty()) {
+            byte[] term = cursors.peek().term;
+            while (!cursors.isEmpty() && Arrays.equals(cursors.peek().term, term)) {
+                TermCursor cursor = cursors.poll();
+                sameTerm.add(cursor);
+                postings.add(cursor.segment.postingsAt(cursor.ordinal - 1));
+            }
+            writer.addTerm(term, new LivePostingIterator(MergingPostingIterator.of(postings)));
+            for (TermCursor cursor : sameTerm) {
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            sameTerm.clear();
+            postings.clear();
+        }
+
+        TreeMap<Integer, SegmentDocument> documents = new TreeMap<>();
+        for (IndexSegment input : inputs) {
+            input.forEachDocument((documentNumber, ownerID, documentPath) ->
+                    documents.put(documentNumber, new SegmentDocument(ownerID, documentPath)));
+        }
+        for (Map.Entry<Integer, SegmentDocument> entry : documents.entrySet()) {
+            if (isLive(entry.getKey())) {
+                writer.addDocument(entry.getKey(), entry.getValue().ownerID, entry.getValue().documentPath);
+            }
+        }
+
+        // A tombstone is only needed while the document it names is in some other segment
+        TreeSet<Integer> tombstones = new TreeSet<>();
+        for (IndexSegment input : inputs) {
+            input.forEachTombstone(documentNumber -> {
+                if (!documents.containsKey(documentNumber)) {
+                    tombstones.add(documentNumber);
+                }
+            });
+        }
+        for (int documentNumber : tombstones) {
+            writer.addTombstone(documentNumber);
+        }
+    }
+
+    // Skips the postings of deleted or replaced documents while a segment is written
+    private class LivePostingIterator implements PostingIterator {
+        private final PostingIterator postings;
+
+        LivePostingIterator(PostingIterator postings) {
+            this.postings = postings;
+        }
+
+        @Override
+        public int documentNumber() {
+            return postings.documentNumber();
+        }
+
+        @Override
+        public int frequency() {
+            return postings.frequency();
+        }
+
+        @Override
+        public int next() {
+            return skipDeleted(postings.next());
+        }
+
+        @Override
+        public int advance(int target) {
+            return skipDeleted(postings.advance(target));
+        }
+
+        @Override
+        public long cost() {
+            return postings.cost();
+        }
+
+        private int skipDeleted(int documentNumber) {
+            while (documentNumber != NO_MORE_DOCUMENTS && !isLive(documentNumber)) {
+                documentNumber = postings.next();
+            }
+            return documentNumber;
+        }
+    }
+
+    private static class SegmentDocument {
+        final long ownerID;
+        final String documentPath;
+
+        SegmentDocument(long ownerID, String documentPath) {
+            this.ownerID = ownerID;
+            this.documentPath = documentPath;
+        }
+    }
+
+    private interface SegmentContent {
+        void write(IndexSegmentWriter writer) throws IOException;
+    }
+
+    private String newSegmentName() {
+        return manifest != null ? manifest.newSegmentName() : String.format("memory-%08d", nextMemorySegment++);
+    }
+
+    // Writes to a temporary file and renames it once complete, so a listed segment is never partial.
+    // An off-heap store writes into a direct buffer instead.
+    private IndexSegment writeSegment(String name, SegmentContent content) throws IOException {
+        if (dataDirectory == null) {
+            IndexSegmentWriter writer = new IndexSegmentWriter();
+            content.write(writer);
+            return IndexSegment.wrap(name, writer.finish());
+        }
+        Path temporary = dataDirectory.resolve(name + ".tmp");
+        Files.deleteIfExists(temporary);
+        IndexSegmentWriter writer = new IndexSegmentWriter(temporary);
+        content.write(writer);
+        writer.finish();
+        Path file = dataDirectory.resolve(name);
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        return IndexSegment.open(file);
+    }
+
+    // Records the new segment list in the manifest, then makes it visible to searches
+    private void publishSegments(List<IndexSegment> segments) throws IOException {
+        if (manifest != null) {
+            List<String> names = new ArrayList<>();
+            for (IndexSegment segment : segments) {
+                names.add(segment.getName());
+            }
+            syncDirectory();
+            manifest.setSegments(names);
+            manifest.write();
+            syncDirectory();
+        }
+
+        lock(updateLock.writeLock());
         try {
-            return new ArrayList<>(termIndex.getOrDefault(term, Collections.emptyList()));
+            IndexView current = view;
+            view = new IndexView(current.active, null, List.copyOf(segments));
         } finally {
-            indexLock.unlock();
+            updateLock.writeLock().unlock();
         }
     }
 
-    // ADDED: store/retrieve client ID for each document number
-    public void setDocumentOwner(long docNumber, long clientID) {
-        docOwnerMap.put(docNumber, clientID);
+    // Makes renames in the data directory durable; not supported on every platform
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dataDirectory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
     }
 
-    public long getDocumentOwner(long docNumber) {
-        return docOwnerMap.getOrDefault(docNumber, -1L);
+    // Removes segments left behind by a flush or merge that did not reach the manifest
+    private void deleteUnlistedFiles(List<String> listed) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDirectory, "segment-*")) {
+            for (Path file : files) {
+                if (!listed.contains(file.getFileName().toString())) {
+                    System.out.println("Deleting unreferenced index file " + file.getFileName());
+                    Files.delete(file);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,66 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Measures IndexStore indexing throughput as the number of concurrent indexing threads grows.
+public class IndexStoreBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int numDocuments = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int termsPerDocument = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, termsPerDocument);
+        List<Map<String, Long>> documents = corpus.documents(numDocuments);
+
+        // Warm up the JIT before taking measurements
+        runIndexing(documents, maxThreads);
+
+        double baseline = 0;
+        System.out.println("threads,docs/sec,speedup");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double docsPerSecond = runIndexing(documents, threads);
+            if (threads == 1) {
+                baseline = docsPerSecond;
+            }
+            System.out.printf("%d,%.0f,%.2f%n", threads, docsPerSecond, docsPerSecond / baseline);
+        }
+    }
+
+    private static double runIndexing(List<Map<String, Long>> documents, int numThreads) throws InterruptedException {
+        IndexStore store = new IndexStore();
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                int docIndex;
+                while ((docIndex = next.getAndIncrement()) < documents.size()) {
+                    long docNum = store.putDocument("/bench/doc-" + docIndex, 1);
+                    store.updateIndex(docNum, documents.get(docIndex));
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long endTime = System.nanoTime();
+        return documents.size() / ((endTime - startTime) / 1e9);
+    }
+}
@@ -0,0 +1,121 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import org.zeromq.ZContext;
+
+// Search latency while clients bulk-index as fast as the server lets them. The "shared" run
+// sends index batches to the same workers as searches, in one queue, as before the index lane
+// existed; the "lanes" run gives them their own worker and a small queue, and turns away
+// batches beyond it with a busy reply.
+public class IngestionBenchmark {
+    private static final int BASE_PORT = 12520;
+    private static final int INDEX_QUEUE = 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int numIndexers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int numSearchers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int numWorkers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        System.out.println("mode,indexed docs/s,batches retried,searches/s,search p50 ms,search p99 ms,search max ms");
+        run("shared", 0, 0, numDocuments, numIndexers, numSearchers, numWorkers, seconds, BASE_PORT);
+        run("lanes", 1, INDEX_QUEUE, numDocuments, numIndexers, numSearchers, numWorkers, seconds, BASE_PORT + 2);
+    }
+
+    private static void run(String mode, int numIndexWorkers, int indexQueueLimit, int numDocuments, int numIndexers,
+            int numSearchers, int numWorkers, int seconds, int port) throws InterruptedException {
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 50);
+        IndexStore store = new IndexStore();
+        List<IndexRequest> batch = new ArrayList<>();
+        for (int i = 0; i < numDocuments; i++) {
+            batch.add(new IndexRequest(1, "/bench/doc-" + i, corpus.document(i)));
+            if (batch.size() == 256) {
+                store.updateIndexBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.updateIndexBatch(batch);
+
+        ServerProcessingEngine engine = new ServerProcessingEngine(store);
+        engine.setSearchCacheSize(0); // Every search is evaluated
+        engine.setAdmission(numIndexWorkers, indexQueueLimit, ServerProcessingEngine.NO_QUEUE_LIMIT);
+        engine.initialize(port, numWorkers);
+        Thread.sleep(500);
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        LongAdder documentsIndexed = new LongAdder();
+        LongAdder batchesRetried = new LongAdder();
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < numIndexers; t++) {
+            long firstDocument = 10_000_000L * (t + 1);
+            threads.add(new Thread(() -> {
+                try (ZContext context = new ZContext()) {
+                    ServerConnection connection = new ServerConnection(context, "localhost:" + port, false);
+                    IndexBatchSender sender = connection.newBatchSender(connection.getClientID(), 256, 8);
+                    for (long next = firstDocument; System.nanoTime() < deadline; next++) {
+                        sender.add("/bench/ingest-" + next, corpus.document(next));
+                    }
+                    sender.finish();
+                    documentsIndexed.add(sender.getDocumentsSent());
+                    batchesRetried.add(sender.getBatchesRetried());
+                    connection.close();
+                }
+            }));
+        }
+        for (int t = 0; t < numSearchers; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                long[] searchLatencies = new long[1024];
+                int count = 0;
+                try (ZContext context = new ZContext()) {
+                    ServerConnection connection = new ServerConnection(context, "localhost:" + port, false);
+                    while (System.nanoTime() < deadline) {
+                        int rank = 100 + random.nextInt(100);
+                        SearchQuery query = new SearchQuery(List.of(corpus.term(rank), corpus.term(rank + 1000)),
+                                SearchQuery.Operator.AND);
+                        long start = System.nanoTime();
+                        connection.sendSearch(query);
+                        connection.receiveSearch();
+                        if (count == searchLatencies.length) {
+                            searchLatencies = Arrays.copyOf(searchLatencies, count * 2);
+                        }
+                        searchLatencies[count++] = System.nanoTime() - start;
+                    }
+                    connection.close();
+                }
+                latencies.add(Arrays.copyOf(searchLatencies, count));
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long[] sorted = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%s,%.0f,%d,%.0f,%.3f,%.3f,%.3f%n", mode, documentsIndexed.sum() / elapsed,
+                batchesRetried.sum(), sorted.length / elapsed, percentile(sorted, 0.50) / 1e6,
+                percentile(sorted, 0.99) / 1e6, sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        System.out.println("# " + engine.getSearchLane());
+        if (engine.getIndexLane() != null) {
+            System.out.println("# " + engine.getIndexLane());
+        }
+        engine.shutdown();
+    }
+
+    private static long percentile(long[] sortedLatencies, double quantile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+    }
+}
@@ -0,0 +1,169 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Mixed search and index load from a set of connected clients, one thread each, with latency
+// histograms per operation type.
+// Without a target rate every client sends its next request as soon as the last one is answered
+// (closed loop), and latency is the time each request took. With a rate, requests are due at
+// fixed intervals and latency is measured from when a request was due, not from when it was
+// sent, so time spent waiting behind a slow response is counted instead of silently skipped
+// (coordinated omission).
+public class LoadGenerator {
+    public static final List<String> DEFAULT_QUERIES = List.of(
+            "the", "child-like", "child-like AND cats", "child-like AND cats AND dogs", "cats OR dogs");
+
+    // Written documents cycle over this many paths per client, so the index stops growing
+    private static final int WRITE_PATHS_PER_CLIENT = 10_000;
+
+    public double requestsPerSecond; // Over all clients; 0 means closed loop
+    public double writeRatio = 0.0;
+    public int durationSeconds = 30;
+    public int warmupSeconds = 5;
+    public List<String> queries = DEFAULT_QUERIES;
+
+    private final SyntheticCorpus corpus = new SyntheticCorpus(50000, 50);
+
+    public static class OperationResult {
+        public final String operation;
+        public final LatencyHistogram latencies = new LatencyHistogram();
+        public long errors;
+
+        public OperationResult(String operation) {
+            this.operation = operation;
+        }
+    }
+
+    // One query per line in SearchQuery syntax; blank lines and lines starting with # are skipped
+    public static List<String> readQueries(Path file) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                SearchQuery.parse(line); // Rejects malformed queries before the run starts
+                queries.add(line);
+            }
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("No queries in " + file);
+        }
+        return queries;
+    }
+
+    // Runs the warmup and then the measured period on every client; returns the search and
+    // index results, each summed over the clients
+    public List<OperationResult> run(List<ClientProcessingEngine> clients) throws InterruptedException {
+        List<OperationResult> searches = new ArrayList<>();
+        List<OperationResult> writes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < clients.size(); i++) {
+            OperationResult search = new OperationResult("search");
+            OperationResult write = new OperationResult("index");
+            searches.add(search);
+            writes.add(write);
+            ClientProcessingEngine client = clients.get(i);
+            long seed = i;
+            threads.add(new Thread(() -> runClient(client, clients.size(), seed, start, search, write), "load-client-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return List.of(sum("search", searches), sum("index", writes));
+    }
+
+    private void runClient(ClientProcessingEngine client, int numClients, long seed, long start,
+            OperationResult search, OperationResult write) {
+        Random random = new Random(seed);
+        long intervalNanos = requestsPerSecond > 0 ? (long) (1e9 * numClients / requestsPerSecond) : 0;
+        long measureStart = start + warmupSeconds * 1_000_000_000L;
+        long end = measureStart + durationSeconds * 1_000_000_000L;
+        // Clients start their schedules spread over one interval rather than all at once
+        long due = start + (intervalNanos > 0 ? (long) (random.nextDouble() * intervalNanos) : 0);
+
+        while (true) {
+            long sendTime = System.nanoTime();
+            if (intervalNanos > 0) {
+                while (sendTime < due) {
+                    LockSupport.parkNanos(due - sendTime);
+                    sendTime = System.nanoTime();
+                }
+                sendTime = due; // Behind schedule, the wait so far counts as latency
+            }
+            if (sendTime >= end) {
+                break;
+            }
+
+            boolean isWrite = random.nextDouble() < writeRatio;
+            OperationResult result = isWrite ? write : search;
+            try {
+                if (isWrite) {
+                    long documentNumber = random.nextInt(WRITE_PATHS_PER_CLIENT);
+                    client.indexDocument("/loadgen/client-" + client.getInfo() + "/doc-" + documentNumber,
+                            corpus.document(documentNumber));
+                } else {
+                    client.searchFiles(SearchQuery.parse(queries.get(random.nextInt(queries.size()))));
+                }
+            } catch (RuntimeException e) {
+                result.errors++;
+            }
+            if (sendTime >= measureStart) {
+                result.latencies.record(System.nanoTime() - sendTime);
+            }
+            due += intervalNanos;
+        }
+    }
+
+    private static OperationResult sum(String operation, List<OperationResult> parts) {
+        OperationResult total = new OperationResult(operation);
+        for (OperationResult part : parts) {
+            total.latencies.add(part.latencies);
+            total.errors += part.errors;
+        }
+        return total;
+    }
+
+    public void printCsv(PrintStream out, int numClients, List<OperationResult> results) {
+        out.println("operation,clients,target_rate,count,errors,throughput,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+        for (OperationResult result : results) {
+            LatencyHistogram latencies = result.latencies;
+            out.printf(Locale.ROOT, "%s,%d,%.1f,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n", result.operation, numClients,
+                    requestsPerSecond, latencies.getCount(), result.errors, latencies.getCount() / (double) durationSeconds,
+                    latencies.getMean() / 1e6, millis(latencies, 50), millis(latencies, 90), millis(latencies, 99),
+                    millis(latencies, 99.9), latencies.getMax() / 1e6);
+        }
+    }
+
+    public void printJson(PrintStream out, int numClients, List<OperationResult> results) {
+        out.println("{");
+        out.printf(Locale.ROOT, "  \"clients\": %d,%n  \"targetRate\": %.1f,%n  \"writeRatio\": %.3f,%n", numClients,
+                requestsPerSecond, writeRatio);
+        out.printf("  \"durationSeconds\": %d,%n  \"warmupSeconds\": %d,%n", durationSeconds, warmupSeconds);
+        out.printf("  \"correctedForCoordinatedOmission\": %b,%n", requestsPerSecond > 0);
+        out.println("  \"operations\": [");
+        for (int i = 0; i < results.size(); i++) {
+            OperationResult result = results.get(i);
+            LatencyHistogram latencies = result.latencies;
+            out.printf(Locale.ROOT, "    {\"operation\": \"%s\", \"count\": %d, \"errors\": %d, \"throughput\": %.1f,"
+                    + " \"meanMs\": %.3f, \"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f}%s%n",
+                    result.operation, latencies.getCount(), result.errors, latencies.getCount() / (double) durationSeconds,
+                    latencies.getMean() / 1e6, millis(latencies, 50), millis(latencies, 90), millis(latencies, 99),
+                    millis(latencies, 99.9), latencies.getMax() / 1e6, i + 1 < results.size() ? "," : "");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static double millis(LatencyHistogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+}
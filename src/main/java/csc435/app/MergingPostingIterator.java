@@ -0,0 +1,138 @@
+package csc435.app;
+
+import java.util.List;
+
+// Presents the postings of one term held by several sources (the in-memory index and on-disk
+// segments) as a single list. Re-indexing a path gives it a new document number, so a document
+// is normally in one source only; if one is found in several, which only the benchmarks'
+// updateIndex can cause, its frequencies are summed.
+public class MergingPostingIterator implements PostingIterator {
+    private final PostingIterator[] sources;
+    private int documentNumber = -1;
+    private int frequency;
+    private int blockMaxFrequency = Integer.MAX_VALUE;
+    private int maxFrequency = -1; // Summed when first asked for, again once a source runs out
+    private int remainingSources = -1;
+
+    public MergingPostingIterator(List<PostingIterator> sources) {
+        this.sources = sources.toArray(new PostingIterator[0]);
+        for (PostingIterator source : this.sources) {
+            source.next();
+        }
+    }
+
+    // Returns the only source itself when there is nothing to merge
+    public static PostingIterator of(List<PostingIterator> sources) {
+        if (sources.isEmpty()) {
+            return PostingIterator.EMPTY;
+        }
+        return sources.size() == 1 ? sources.get(0) : new MergingPostingIterator(sources);
+    }
+
+    @Override
+    public int documentNumber() {
+        return documentNumber;
+    }
+
+    @Override
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public int next() {
+        if (documentNumber != -1 && documentNumber != NO_MORE_DOCUMENTS) {
+            for (PostingIterator source : sources) {
+                if (source.documentNumber() == documentNumber) {
+                    source.next();
+                }
+            }
+        }
+        return collect();
+    }
+
+    @Override
+    public int advance(int target) {
+        for (PostingIterator source : sources) {
+            if (source.documentNumber() < target) {
+                source.advance(target);
+            }
+        }
+        return collect();
+    }
+
+    @Override
+    public long cost() {
+        long cost = 0;
+        for (PostingIterator source : sources) {
+            cost += source.cost();
+        }
+        return cost;
+    }
+
+    // A document's merged frequency is at most the sum of the remaining sources' bounds
+    @Override
+    public int maxFrequency() {
+        if (maxFrequency < 0) {
+            long sum = 0;
+            for (PostingIterator source : sources) {
+                if (source.documentNumber() != NO_MORE_DOCUMENTS) {
+                    sum += source.maxFrequency();
+                }
+            }
+            maxFrequency = (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+        return maxFrequency;
+    }
+
+    // The merged block ends where the first source's block does. Segments mostly hold disjoint
+    // ranges of documents, so sources already past the block's end are left out of the bound.
+    @Override
+    public int advanceShallow(int target) {
+        int end = NO_MORE_DOCUMENTS;
+        for (PostingIterator source : sources) {
+            end = Math.min(end, source.advanceShallow(target));
+        }
+        long sum = 0;
+        for (PostingIterator source : sources) {
+            int position = source.documentNumber();
+            if (position < target || position <= end) {
+                sum += source.blockMaxFrequency();
+            }
+        }
+        blockMaxFrequency = (int) Math.min(sum, Integer.MAX_VALUE);
+        return end;
+    }
+
+    @Override
+    public int blockMaxFrequency() {
+        return blockMaxFrequency;
+    }
+
+    // Positions on the smallest document any source is on and sums its frequencies
+    private int collect() {
+        int smallest = NO_MORE_DOCUMENTS;
+        int remaining = 0;
+        for (PostingIterator source : sources) {
+            smallest = Math.min(smallest, source.documentNumber());
+            if (source.documentNumber() != NO_MORE_DOCUMENTS) {
+                remaining++;
+            }
+        }
+        if (remaining != remainingSources) {
+            remainingSources = remaining;
+            maxFrequency = -1;
+        }
+        int sum = 0;
+        if (smallest != NO_MORE_DOCUMENTS) {
+            for (PostingIterator source : sources) {
+                if (source.documentNumber() == smallest) {
+                    sum = (int) Math.min((long) sum + source.frequency(), Integer.MAX_VALUE);
+                }
+            }
+        }
+        documentNumber = smallest;
+        frequency = sum;
+        return smallest;
+    }
+}
@@ -0,0 +1,156 @@
+package csc435.app;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+// Compares the on-heap in-memory index with the off-heap one (IndexStore.offHeap) on the same
+// synthetic corpus: GC pauses while indexing, heap and direct memory held by the finished index,
+// how long a full GC takes while it is live, and search latency. Each store is built in its own
+// JVM, started with this JVM's options, so that neither sees the other's garbage.
+public class OffHeapIndexBenchmark {
+    private static final String[] MODES = { "on-heap", "off-heap" };
+
+    public static void main(String[] args) throws Exception {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int termsPerDocument = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        if (args.length > 2) {
+            run(args[2], numDocuments, termsPerDocument);
+            return;
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (String mode : MODES) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(OffHeapIndexBenchmark.class.getName());
+            command.add(String.valueOf(numDocuments));
+            command.add(String.valueOf(termsPerDocument));
+            command.add(mode);
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException(mode + " run failed with exit code " + exitCode);
+            }
+        }
+    }
+
+    private static void run(String mode, int numDocuments, int termsPerDocument) throws IOException {
+        IndexStore store;
+        if (mode.equals("on-heap")) {
+            store = new IndexStore();
+        } else if (mode.equals("off-heap")) {
+            store = IndexStore.offHeap();
+        } else {
+            throw new IllegalArgumentException("Unknown mode " + mode + ", expected on-heap or off-heap");
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, termsPerDocument);
+        long baselineHeap = usedHeap();
+
+        PauseRecorder pauses = new PauseRecorder();
+        long start = System.nanoTime();
+        long postings = 0;
+        for (int i = 0; i < numDocuments; i++) {
+            Map<String, Long> document = corpus.document(i);
+            store.updateIndex(store.putDocument("/bench/doc-" + i, 1), document);
+            postings += document.size();
+        }
+        store.flush();
+        double indexSeconds = (System.nanoTime() - start) / 1e9;
+        pauses.stop();
+
+        long heapBytes = usedHeap() - baselineHeap;
+        long fullGCStart = System.nanoTime();
+        System.gc();
+        double fullGCMillis = (System.nanoTime() - fullGCStart) / 1e6;
+
+        QueryEvaluator evaluator = new QueryEvaluator(store);
+        List<SearchQuery> queries = List.of(
+                new SearchQuery(List.of(corpus.term(0), corpus.term(1)), SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(50)), SearchQuery.Operator.AND),
+                new SearchQuery(List.of(corpus.term(500), corpus.term(5000)), SearchQuery.Operator.OR));
+        for (int i = 0; i < 5; i++) {
+            queries.forEach(evaluator::evaluate); // Warm up
+        }
+        int repetitions = 20;
+        long searchStart = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            queries.forEach(evaluator::evaluate);
+        }
+        double searchMillis = (System.nanoTime() - searchStart) / 1e6 / (repetitions * queries.size());
+
+        IndexStore.Statistics statistics = store.getStatistics();
+        System.out.printf("%-9s indexed %,d documents (%,d postings) in %.1f s, %d segments%n",
+                mode + ":", numDocuments, postings, indexSeconds, statistics.segments);
+        System.out.printf("          GC while indexing: %d pauses, %d ms total, %d ms max%n",
+                pauses.count.get(), pauses.totalMillis.get(), pauses.maxMillis.get());
+        System.out.printf("          heap held by the index: %,.1f MB, direct memory: %,.1f MB%n",
+                heapBytes / 1048576.0, directMemory() / 1048576.0);
+        System.out.printf("          full GC with the index live: %.1f ms, search: %.3f ms per query%n",
+                fullGCMillis, searchMillis);
+        store.close();
+    }
+
+    // Records the pauses reported by the collectors; concurrent cycles do not stop the application
+    private static class PauseRecorder {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalMillis = new AtomicLong();
+        final AtomicLong maxMillis = new AtomicLong();
+        private volatile boolean stopped;
+
+        PauseRecorder() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector.getName().contains("Concurrent")) {
+                    continue;
+                }
+                ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                    if (stopped || !notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long millis = info.getGcInfo().getDuration();
+                    count.incrementAndGet();
+                    totalMillis.addAndGet(millis);
+                    maxMillis.accumulateAndGet(millis, Math::max);
+                }, null, null);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+
+    private static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,293 @@
+package csc435.app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Compressed posting layout of index segments. Postings are cut into blocks of BLOCK_SIZE;
+// each block stores the gaps between its document numbers and the frequencies, both minus
+// one, bit-packed with the fewest bits that fit the largest value in the block (frame of
+// reference). A skip table in front of the blocks holds each block's last document number,
+// where it ends and its largest frequency, so iterators can jump over blocks without decoding
+// them, and searches can tell which blocks cannot hold a top-scoring document.
+//
+// Layout of one term's postings (little-endian ints):
+//   skip table  per block: int lastDocumentNumber, int end offset relative to the first block,
+//               int maxFrequency
+//   blocks      per block: byte gapBits, byte frequencyBits,
+//               packed (gap - 1) values, then packed (frequency - 1) values, low bits first
+// The first block's gaps are taken from -1, every other block's from the previous block's
+// last document number. Decoding reads whole longs, so the buffer must have PADDING readable
+// bytes after the encoded postings; in a segment the term dictionary always follows them.
+public class PostingBlockCodec {
+    public static final int BLOCK_SIZE = 128;
+    public static final int PADDING = 8;
+    static final int SKIP_ENTRY_SIZE = 12;
+
+    // Largest encoding of count postings, for sizing the output array
+    public static int maxEncodedSize(int count) {
+        return 8 * count + (SKIP_ENTRY_SIZE + 2) * blockCount(count);
+    }
+
+    static int blockCount(int count) {
+        return (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    // Encodes sorted postings into output, which must hold maxEncodedSize(count) bytes, and
+    // returns the number of bytes written
+    public static int encode(int[] documentNumbers, int[] frequencies, int count, byte[] output) {
+        int blocks = blockCount(count);
+        ByteBuffer skipTable = ByteBuffer.wrap(output, 0, blocks * SKIP_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int blocksOffset = blocks * SKIP_ENTRY_SIZE;
+        int position = blocksOffset;
+        int[] values = new int[BLOCK_SIZE];
+        int previous = -1;
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, count - start);
+            for (int i = 0; i < length; i++) {
+                int documentNumber = documentNumbers[start + i];
+                if (documentNumber <= previous) {
+                    throw new IllegalArgumentException("Document numbers must be strictly increasing");
+                }
+                values[i] = documentNumber - previous - 1;
+                previous = documentNumber;
+            }
+            int gapBitsAt = position;
+            position = pack(values, length, output, position + 2);
+            output[gapBitsAt] = (byte) bitsRequired(values, length);
+
+            for (int i = 0; i < length; i++) {
+                values[i] = frequencies[start + i] - 1;
+            }
+            output[gapBitsAt + 1] = (byte) bitsRequired(values, length);
+            position = pack(values, length, output, position);
+
+            int maxFrequency = 0;
+            for (int i = 0; i < length; i++) {
+                maxFrequency = Math.max(maxFrequency, frequencies[start + i]);
+            }
+            skipTable.putInt(previous).putInt(position - blocksOffset).putInt(maxFrequency);
+        }
+        return position;
+    }
+
+    private static int bitsRequired(int[] values, int length) {
+        int union = 0;
+        for (int i = 0; i < length; i++) {
+            union |= values[i];
+        }
+        return 32 - Integer.numberOfLeadingZeros(union);
+    }
+
+    private static int pack(int[] values, int length, byte[] output, int position) {
+        int bits = bitsRequired(values, length);
+        long accumulator = 0;
+        int pending = 0;
+        for (int i = 0; i < length; i++) {
+            accumulator |= (values[i] & 0xFFFFFFFFL) << pending;
+            pending += bits;
+            while (pending >= 8) {
+                output[position++] = (byte) accumulator;
+                accumulator >>>= 8;
+                pending -= 8;
+            }
+        }
+        if (pending > 0) {
+            output[position++] = (byte) accumulator;
+        }
+        return position;
+    }
+
+    // Unpacks count values of the given width starting at offset in input, reading each value
+    // with one unaligned little-endian long
+    private static void unpack(ByteBuffer input, int offset, int bits, int[] values, int count) {
+        if (bits == 0) {
+            Arrays.fill(values, 0, count, 0);
+            return;
+        }
+        long mask = (1L << bits) - 1;
+        for (int i = 0, bit = offset << 3; i < count; i++, bit += bits) {
+            values[i] = (int) ((input.getLong(bit >>> 3) >>> (bit & 7)) & mask);
+        }
+    }
+
+    private static int packedSize(int bits, int count) {
+        return (bits * count + 7) >>> 3;
+    }
+
+    // Reads encoded postings in place from a little-endian buffer. A block's document numbers
+    // are decoded when the iterator enters it and its frequencies only when one is asked for,
+    // and advance and advanceShallow consult the skip table first, so blocks that hold no
+    // wanted document are never decoded.
+    public static class BlockPostingIterator implements PostingIterator {
+        private final ByteBuffer buffer;
+        private final int skipTableOffset;
+        private final int blocksOffset;
+        private final int size;
+        private final int blockCount;
+        private int maxFrequency; // -1: read from the skip table when first asked for
+        private int shallowMaxFrequency = Integer.MAX_VALUE;
+
+        // Sized for the largest block when the first one is loaded
+        private int[] documents;
+        private int[] frequencies;
+        private int block = -1;
+        private int blockLength;
+        private int frequencyBits;
+        private int frequenciesAt; // Buffer offset of the current block's packed frequencies
+        private boolean frequenciesDecoded;
+        private int index = -1;
+        private int current = -1;
+
+        public BlockPostingIterator(ByteBuffer buffer, int offset, int size) {
+            this(buffer, offset, size, -1);
+        }
+
+        // Segments pass the maxFrequency stored in the term entry; -1 reads it from the skip table
+        BlockPostingIterator(ByteBuffer buffer, int offset, int size, int maxFrequency) {
+            if (buffer.order() != ByteOrder.LITTLE_ENDIAN) {
+                throw new IllegalArgumentException("Block postings are read from a little-endian buffer");
+            }
+            this.buffer = buffer;
+            this.size = size;
+            this.blockCount = blockCount(size);
+            this.maxFrequency = maxFrequency;
+            this.skipTableOffset = offset;
+            this.blocksOffset = offset + blockCount * SKIP_ENTRY_SIZE;
+        }
+
+        private int lastDocument(int block) {
+            return buffer.getInt(skipTableOffset + SKIP_ENTRY_SIZE * block);
+        }
+
+        private int blockEnd(int block) {
+            return block < 0 ? 0 : buffer.getInt(skipTableOffset + SKIP_ENTRY_SIZE * block + 4);
+        }
+
+        private int blockMaxFrequency(int block) {
+            return buffer.getInt(skipTableOffset + SKIP_ENTRY_SIZE * block + 8);
+        }
+
+        // First block at or after from whose last document number is >= target, or blockCount
+        private int findBlock(int from, int target) {
+            int low = from;
+            int high = blockCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (lastDocument(middle) < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void loadBlock(int target) {
+            if (documents == null) {
+                documents = new int[Math.min(BLOCK_SIZE, size)];
+                frequencies = new int[documents.length];
+            }
+            int start = blocksOffset + blockEnd(target - 1);
+            block = target;
+            blockLength = Math.min(BLOCK_SIZE, size - target * BLOCK_SIZE);
+            int gapBits = buffer.get(start);
+            frequencyBits = buffer.get(start + 1);
+            frequenciesAt = start + 2 + packedSize(gapBits, blockLength);
+            frequenciesDecoded = false;
+
+            unpack(buffer, start + 2, gapBits, documents, blockLength);
+            int documentNumber = target == 0 ? -1 : lastDocument(target - 1);
+            for (int i = 0; i < blockLength; i++) {
+                documentNumber += documents[i] + 1;
+                documents[i] = documentNumber;
+            }
+            index = 0;
+        }
+
+        @Override
+        public int documentNumber() {
+            return current;
+        }
+
+        @Override
+        public int frequency() {
+            if (!frequenciesDecoded) {
+                unpack(buffer, frequenciesAt, frequencyBits, frequencies, blockLength);
+                for (int i = 0; i < blockLength; i++) {
+                    frequencies[i]++;
+                }
+                frequenciesDecoded = true;
+            }
+            return frequencies[index];
+        }
+
+        @Override
+        public int next() {
+            if (current == NO_MORE_DOCUMENTS) {
+                return current;
+            }
+            if (index + 1 < blockLength) {
+                index++;
+            } else if (block + 1 < blockCount) {
+                loadBlock(block + 1);
+            } else {
+                return current = NO_MORE_DOCUMENTS;
+            }
+            return current = documents[index];
+        }
+
+        @Override
+        public int advance(int target) {
+            if (current == NO_MORE_DOCUMENTS) {
+                return current;
+            }
+            if (block < 0 || lastDocument(block) < target) {
+                int low = findBlock(block + 1, target);
+                if (low == blockCount) {
+                    return current = NO_MORE_DOCUMENTS;
+                }
+                loadBlock(low);
+            }
+            if (documents[index] < target) {
+                // The block's last document is >= target, so the search always lands in it
+                int position = Arrays.binarySearch(documents, index + 1, blockLength, target);
+                index = position >= 0 ? position : -position - 1;
+            }
+            return current = documents[index];
+        }
+
+        @Override
+        public long cost() {
+            return size;
+        }
+
+        @Override
+        public int maxFrequency() {
+            if (maxFrequency < 0) {
+                int max = 0;
+                for (int i = 0; i < blockCount; i++) {
+                    max = Math.max(max, blockMaxFrequency(i));
+                }
+                maxFrequency = max;
+            }
+            return maxFrequency;
+        }
+
+        @Override
+        public int advanceShallow(int target) {
+            int found = current == NO_MORE_DOCUMENTS ? blockCount : findBlock(Math.max(block, 0), target);
+            if (found == blockCount) {
+                shallowMaxFrequency = 0;
+                return NO_MORE_DOCUMENTS;
+            }
+            shallowMaxFrequency = blockMaxFrequency(found);
+            return lastDocument(found);
+        }
+
+        @Override
+        public int blockMaxFrequency() {
+            return shallowMaxFrequency;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package csc435.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Size and decode speed of the block-compressed segment postings against the plain int arrays
+// of the previous segment format (and of PostingList). Reports bytes per posting, sequential
+// decode throughput with and without frequencies, and the time to intersect rare terms with
+// common ones, where advance can skip whole blocks.
+public class PostingCompressionBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<Map<String, Long>> documents = new ArrayList<>();
+        if (args.length > 0 && !args[0].equals("synthetic")) {
+            PostingMemoryReport.collectDocuments(new File(args[0]), documents);
+            System.out.println("Corpus: " + args[0] + " (" + documents.size() + " documents)");
+        } else {
+            documents = new SyntheticCorpus(100000, 300).documents(50000);
+            System.out.println("Corpus: synthetic Zipfian (" + documents.size() + " documents)");
+        }
+
+        Map<String, PostingList> index = new ConcurrentHashMap<>();
+        for (int docNum = 0; docNum < documents.size(); docNum++) {
+            for (Map.Entry<String, Long> entry : documents.get(docNum).entrySet()) {
+                index.computeIfAbsent(entry.getKey(), k -> new PostingList()).add(docNum, entry.getValue());
+            }
+        }
+        List<String> terms = new ArrayList<>(index.keySet());
+        terms.sort(Comparator.comparingInt((String term) -> index.get(term).size()).reversed());
+
+        // Encode every term into one direct buffer, as a segment maps them
+        int termCount = terms.size();
+        int[][] documentNumbers = new int[termCount][];
+        int[][] frequencies = new int[termCount][];
+        int[] offsets = new int[termCount];
+        long postings = 0;
+        long encodedBytes = 0;
+        long skipBytes = 0;
+        for (int t = 0; t < termCount; t++) {
+            PostingList list = index.get(terms.get(t));
+            int size = list.size();
+            documentNumbers[t] = new int[size];
+            frequencies[t] = new int[size];
+            for (int i = 0; i < size; i++) {
+                documentNumbers[t][i] = list.documentNumber(i);
+                frequencies[t][i] = list.frequency(i);
+            }
+            postings += size;
+            encodedBytes += PostingBlockCodec.maxEncodedSize(size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, encodedBytes
+                + PostingBlockCodec.PADDING)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] scratch = new byte[PostingBlockCodec.maxEncodedSize(documentNumbers[0].length)];
+        for (int t = 0; t < termCount; t++) {
+            offsets[t] = buffer.position();
+            int length = PostingBlockCodec.encode(documentNumbers[t], frequencies[t], documentNumbers[t].length, scratch);
+            buffer.put(scratch, 0, length);
+            skipBytes += (long) PostingBlockCodec.blockCount(documentNumbers[t].length) * PostingBlockCodec.SKIP_ENTRY_SIZE;
+        }
+        encodedBytes = buffer.position();
+
+        System.out.printf("%,d terms, %,d postings%n", termCount, postings);
+        System.out.printf("%-14s %,14d bytes  %6.2f bytes/posting%n", "int arrays", 8 * postings, 8.0);
+        System.out.printf("%-14s %,14d bytes  %6.2f bytes/posting (skip tables %.2f)  %.1fx smaller%n", "blocks",
+                encodedBytes, (double) encodedBytes / postings, (double) skipBytes / postings,
+                8.0 * postings / encodedBytes);
+
+        System.out.println("layout,pass,million postings/s");
+        for (boolean withFrequencies : new boolean[] { false, true }) {
+            String pass = withFrequencies ? "documents+frequencies" : "documents";
+            double arrays = throughput(repetitions, postings, () -> {
+                long sum = 0;
+                for (int t = 0; t < termCount; t++) {
+                    sum += drain(new PostingList.ArrayPostingIterator(documentNumbers[t], frequencies[t],
+                            documentNumbers[t].length), withFrequencies);
+                }
+                return sum;
+            });
+            double blocks = throughput(repetitions, postings, () -> {
+                long sum = 0;
+                for (int t = 0; t < termCount; t++) {
+                    sum += drain(new PostingBlockCodec.BlockPostingIterator(buffer, offsets[t],
+                            documentNumbers[t].length), withFrequencies);
+                }
+                return sum;
+            });
+            System.out.printf(Locale.ROOT, "int arrays,%s,%.1f%n", pass, arrays);
+            System.out.printf(Locale.ROOT, "blocks,%s,%.1f%n", pass, blocks);
+        }
+
+        // Each of the 20 most common terms intersected with terms 100 to 1000 times rarer
+        System.out.println("layout,intersections,ms");
+        int common = Math.min(20, termCount);
+        List<int[]> pairs = new ArrayList<>();
+        for (int c = 0; c < common; c++) {
+            for (int r = common; r < termCount; r += Math.max(1, termCount / 200)) {
+                int ratio = documentNumbers[c].length / Math.max(1, documentNumbers[r].length);
+                if (ratio >= 100 && ratio <= 1000) {
+                    pairs.add(new int[] { c, r });
+                }
+            }
+        }
+        double arraysMillis = millis(repetitions, () -> {
+            long sum = 0;
+            for (int[] pair : pairs) {
+                sum += intersect(new PostingList.ArrayPostingIterator(documentNumbers[pair[1]], frequencies[pair[1]],
+                        documentNumbers[pair[1]].length), new PostingList.ArrayPostingIterator(documentNumbers[pair[0]],
+                        frequencies[pair[0]], documentNumbers[pair[0]].length));
+            }
+            return sum;
+        });
+        double blocksMillis = millis(repetitions, () -> {
+            long sum = 0;
+            for (int[] pair : pairs) {
+                sum += intersect(new PostingBlockCodec.BlockPostingIterator(buffer, offsets[pair[1]],
+                        documentNumbers[pair[1]].length), new PostingBlockCodec.BlockPostingIterator(buffer,
+                        offsets[pair[0]], documentNumbers[pair[0]].length));
+            }
+            return sum;
+        });
+        System.out.printf(Locale.ROOT, "int arrays,%d,%.3f%n", pairs.size(), arraysMillis);
+        System.out.printf(Locale.ROOT, "blocks,%d,%.3f%n", pairs.size(), blocksMillis);
+    }
+
+    private static long drain(PostingIterator iterator, boolean withFrequencies) {
+        long sum = 0;
+        for (int doc = iterator.next(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = iterator.next()) {
+            sum += withFrequencies ? iterator.frequency() : doc;
+        }
+        return sum;
+    }
+
+    // Frequency sum of the documents both lists contain, driven by the rarer list
+    private static long intersect(PostingIterator rare, PostingIterator common) {
+        long sum = 0;
+        for (int doc = rare.next(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = rare.next()) {
+            int other = common.documentNumber() >= doc ? common.documentNumber() : common.advance(doc);
+            if (other == PostingIterator.NO_MORE_DOCUMENTS) {
+                break;
+            }
+            if (other == doc) {
+                sum += rare.frequency() + common.frequency();
+            }
+        }
+        return sum;
+    }
+
+    private static double throughput(int repetitions, long postings, java.util.function.LongSupplier pass) {
+        return postings / (millis(repetitions, pass) * 1e3);
+    }
+
+    // Average milliseconds per pass after as many warmup passes
+    private static double millis(int repetitions, java.util.function.LongSupplier pass) {
+        long sink = 0;
+        for (int i = 0; i < repetitions; i++) {
+            sink += pass.getAsLong();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            sink += pass.getAsLong();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / repetitions;
+        return sink == Long.MIN_VALUE ? -1 : millis;
+    }
+}
@@ -0,0 +1,75 @@
+package csc435.app;
+
+// Forward-only cursor over one term's postings in increasing document number order.
+// A new iterator is positioned before its first posting.
+public interface PostingIterator {
+    int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+    // Current document number, -1 before the first call to next, NO_MORE_DOCUMENTS at the end
+    int documentNumber();
+
+    // Frequency of the term in the current document
+    int frequency();
+
+    // Moves to the next posting and returns its document number
+    int next();
+
+    // Moves to the first posting whose document number is >= target and returns it.
+    // Target must be greater than the current document number.
+    int advance(int target);
+
+    // Number of postings, used to order query terms from rarest to most common
+    long cost();
+
+    // Upper bound of the frequency of any posting in the list, used to skip documents that
+    // cannot enter the top results. Integer.MAX_VALUE when the list does not know one.
+    default int maxFrequency() {
+        return Integer.MAX_VALUE;
+    }
+
+    // Moves the block bounds, without moving the iterator, to the block holding the first
+    // posting whose document number is >= target and returns the last document number that
+    // block covers; NO_MORE_DOCUMENTS if no posting is left. Lists without blocks cover
+    // everything with a single block ending at NO_MORE_DOCUMENTS.
+    default int advanceShallow(int target) {
+        return NO_MORE_DOCUMENTS;
+    }
+
+    // Upper bound of the frequencies from the target given to advanceShallow up to the last
+    // document number it returned
+    default int blockMaxFrequency() {
+        return maxFrequency();
+    }
+
+    PostingIterator EMPTY = new PostingIterator() {
+        @Override
+        public int documentNumber() {
+            return NO_MORE_DOCUMENTS;
+        }
+
+        @Override
+        public int frequency() {
+            return 0;
+        }
+
+        @Override
+        public int next() {
+            return NO_MORE_DOCUMENTS;
+        }
+
+        @Override
+        public int advance(int target) {
+            return NO_MORE_DOCUMENTS;
+        }
+
+        @Override
+        public long cost() {
+            return 0;
+        }
+
+        @Override
+        public int maxFrequency() {
+            return 0;
+        }
+    };
+}
@@ -0,0 +1,266 @@
+package csc435.app;
+
+import java.util.Arrays;
+
+// Posting list of one term stored as parallel primitive arrays sorted by document number.
+// Documents usually arrive in increasing order, so adding one is an amortized O(1) append;
+// out-of-order documents are located with a binary search.
+// Snapshots share the arrays instead of copying them. Appends never touch the shared prefix,
+// and the rare in-place update (an out-of-order insert, or a frequency added to a document
+// already in the list, which only the benchmarks' updateIndex does) copies the arrays first
+// while a snapshot may still be reading them.
+// The largest frequency of every BLOCK_SIZE postings is kept for pruning searches. An append may
+// raise the last block's maximum under a snapshot, which then only bounds it less tightly.
+public class PostingList {
+    public static final int BLOCK_SIZE = PostingBlockCodec.BLOCK_SIZE;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] documentNumbers;
+    private int[] frequencies;
+    private int[] blockMaxFrequencies;
+    private int maxFrequency;
+    private int size;
+    private boolean shared;   // A snapshot references the current arrays
+    private boolean readOnly; // This instance is a snapshot
+
+    public PostingList() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private PostingList(int capacity) {
+        this.documentNumbers = new int[capacity];
+        this.frequencies = new int[capacity];
+        this.blockMaxFrequencies = new int[blockCount(capacity)];
+    }
+
+    // Adds the frequency to the document's existing posting, or inserts a new posting
+    public synchronized void add(int documentNumber, long frequency) {
+        addUnlocked(documentNumber, frequency);
+    }
+
+    // Merges several postings while taking the lock only once
+    public synchronized void addAll(int[] documentNumbers, long[] frequencies, int count) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            addUnlocked(documentNumbers[i], frequencies[i]);
+        }
+    }
+
+    private void addUnlocked(int documentNumber, long frequency) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Posting list snapshots are read-only");
+        }
+        if (size == 0 || documentNumbers[size - 1] < documentNumber) {
+            ensureCapacity(size + 1);
+            documentNumbers[size] = documentNumber;
+            frequencies[size] = saturate(frequency);
+            raiseMaxFrequency(size);
+            size++;
+            return;
+        }
+
+        int position = Arrays.binarySearch(documentNumbers, 0, size, documentNumber);
+        unshare();
+        if (position >= 0) {
+            frequencies[position] = saturate(frequencies[position] + frequency); // Merge frequency
+            raiseMaxFrequency(position);
+            return;
+        }
+
+        int insertAt = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(documentNumbers, insertAt, documentNumbers, insertAt + 1, size - insertAt);
+        System.arraycopy(frequencies, insertAt, frequencies, insertAt + 1, size - insertAt);
+        documentNumbers[insertAt] = documentNumber;
+        frequencies[insertAt] = saturate(frequency);
+        size++;
+        // Postings after the insert moved up, some of them into the next block
+        for (int block = insertAt / BLOCK_SIZE; block < blockCount(size); block++) {
+            int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+            int max = 0;
+            for (int i = block * BLOCK_SIZE; i < end; i++) {
+                max = Math.max(max, frequencies[i]);
+            }
+            blockMaxFrequencies[block] = max;
+        }
+        maxFrequency = Math.max(maxFrequency, frequencies[insertAt]);
+    }
+
+    private void raiseMaxFrequency(int position) {
+        int block = position / BLOCK_SIZE;
+        blockMaxFrequencies[block] = Math.max(blockMaxFrequencies[block], frequencies[position]);
+        maxFrequency = Math.max(maxFrequency, frequencies[position]);
+    }
+
+    // Immutable O(1) view that can be read without holding the posting list's lock
+    public synchronized PostingList snapshot() {
+        PostingList view = new PostingList(0);
+        view.documentNumbers = documentNumbers;
+        view.frequencies = frequencies;
+        view.blockMaxFrequencies = blockMaxFrequencies;
+        view.maxFrequency = maxFrequency;
+        view.size = size;
+        view.readOnly = true;
+        shared = true;
+        return view;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int documentNumber(int index) {
+        return documentNumbers[index];
+    }
+
+    public int frequency(int index) {
+        return frequencies[index];
+    }
+
+    public int maxFrequency() {
+        return maxFrequency;
+    }
+
+    // Iterator over a snapshot of the current postings
+    public PostingIterator iterator() {
+        PostingList view = snapshot();
+        return new ArrayPostingIterator(view.documentNumbers, view.frequencies, view.size,
+                view.blockMaxFrequencies, view.maxFrequency);
+    }
+
+    private static int blockCount(int capacity) {
+        return (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > documentNumbers.length) {
+            int newCapacity = Math.max(capacity, documentNumbers.length + (documentNumbers.length >> 1));
+            documentNumbers = Arrays.copyOf(documentNumbers, newCapacity);
+            frequencies = Arrays.copyOf(frequencies, newCapacity);
+            blockMaxFrequencies = Arrays.copyOf(blockMaxFrequencies, blockCount(newCapacity));
+            shared = false;
+        }
+    }
+
+    private void unshare() {
+        if (shared) {
+            documentNumbers = documentNumbers.clone();
+            frequencies = frequencies.clone();
+            blockMaxFrequencies = blockMaxFrequencies.clone();
+            shared = false;
+        }
+    }
+
+    private static int saturate(long frequency) {
+        return (int) Math.min(frequency, Integer.MAX_VALUE);
+    }
+
+    // Iterates sorted parallel arrays. advance gallops forward in doubling steps and then binary
+    // searches the last step, so walking a long list in step with a short one costs
+    // O(short * log(long / short)).
+    public static class ArrayPostingIterator implements PostingIterator {
+        private final int[] documentNumbers;
+        private final int[] frequencies;
+        private final int size;
+        private final int[] blockMaxFrequencies; // Null when the arrays have no block maxima
+        private final int maxFrequency;
+        private int shallowMaxFrequency;
+        private int index = -1;
+
+        public ArrayPostingIterator(int[] documentNumbers, int[] frequencies, int size) {
+            this(documentNumbers, frequencies, size, null, Integer.MAX_VALUE);
+        }
+
+        public ArrayPostingIterator(int[] documentNumbers, int[] frequencies, int size, int[] blockMaxFrequencies,
+                int maxFrequency) {
+            this.documentNumbers = documentNumbers;
+            this.frequencies = frequencies;
+            this.size = size;
+            this.blockMaxFrequencies = blockMaxFrequencies;
+            this.maxFrequency = maxFrequency;
+            this.shallowMaxFrequency = maxFrequency;
+        }
+
+        @Override
+        public int documentNumber() {
+            return index < 0 ? -1 : index < size ? documentNumbers[index] : NO_MORE_DOCUMENTS;
+        }
+
+        @Override
+        public int frequency() {
+            return frequencies[index];
+        }
+
+        @Override
+        public int next() {
+            if (index < size) {
+                index++;
+            }
+            return documentNumber();
+        }
+
+        @Override
+        public int advance(int target) {
+            index = Math.min(size, firstAtLeast(index + 1, target));
+            return documentNumber();
+        }
+
+        // Position of the first posting at or after from whose document number is >= target
+        private int firstAtLeast(int from, int target) {
+            int low = from;
+            if (low >= size || documentNumbers[low] >= target) {
+                return low;
+            }
+            // documentNumbers[low] < target: gallop to bracket the first posting >= target
+            int step = 1;
+            int high = low + step;
+            while (high < size && documentNumbers[high] < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, size);
+
+            // documentNumbers[low] < target, and documentNumbers[high] >= target or high == size
+            while (low + 1 < high) {
+                int middle = (low + high) >>> 1;
+                if (documentNumbers[middle] < target) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return high;
+        }
+
+        @Override
+        public long cost() {
+            return size;
+        }
+
+        @Override
+        public int maxFrequency() {
+            return maxFrequency;
+        }
+
+        @Override
+        public int advanceShallow(int target) {
+            if (blockMaxFrequencies == null) {
+                return NO_MORE_DOCUMENTS;
+            }
+            int position = firstAtLeast(Math.max(index, 0), target);
+            if (position >= size) {
+                shallowMaxFrequency = 0;
+                return NO_MORE_DOCUMENTS;
+            }
+            int block = position / BLOCK_SIZE;
+            shallowMaxFrequency = blockMaxFrequencies[block];
+            return documentNumbers[Math.min(size, (block + 1) * BLOCK_SIZE) - 1];
+        }
+
+        @Override
+        public int blockMaxFrequency() {
+            return shallowMaxFrequency;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package csc435.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compares the heap footprint of the old boxed posting layout with PostingList on the same corpus.
+public class PostingMemoryReport {
+
+    // Replica of the layout IndexStore used before primitive posting lists
+    private static class LegacyDocFreqPair {
+        long documentNumber;
+        long wordFrequency;
+
+        LegacyDocFreqPair(long documentNumber, long wordFrequency) {
+            this.documentNumber = documentNumber;
+            this.wordFrequency = wordFrequency;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Map<String, Long>> documents = new ArrayList<>();
+        if (args.length > 0) {
+            collectDocuments(new File(args[0]), documents);
+            System.out.println("Corpus: " + args[0] + " (" + documents.size() + " documents)");
+        } else {
+            documents = new SyntheticCorpus(100000, 300).documents(50000);
+            System.out.println("Corpus: synthetic Zipfian (" + documents.size() + " documents)");
+        }
+
+        long postings = documents.stream().mapToLong(Map::size).sum();
+
+        long baseline = usedHeap();
+        long legacyStart = System.nanoTime();
+        Map<String, List<LegacyDocFreqPair>> legacyIndex = buildLegacyIndex(documents);
+        double legacySeconds = (System.nanoTime() - legacyStart) / 1e9;
+        long legacyBytes = usedHeap() - baseline;
+        Reference.reachabilityFence(legacyIndex);
+        report("List<DocFreqPair>", legacyBytes, postings, legacySeconds);
+        legacyIndex = null;
+
+        baseline = usedHeap();
+        long primitiveStart = System.nanoTime();
+        Map<String, PostingList> primitiveIndex = buildPrimitiveIndex(documents);
+        double primitiveSeconds = (System.nanoTime() - primitiveStart) / 1e9;
+        long primitiveBytes = usedHeap() - baseline;
+        Reference.reachabilityFence(primitiveIndex);
+        report("PostingList", primitiveBytes, postings, primitiveSeconds);
+
+        System.out.printf("Heap reduction: %.1f%% (%d terms, %d postings)%n",
+                100.0 * (legacyBytes - primitiveBytes) / legacyBytes, primitiveIndex.size(), postings);
+    }
+
+    private static Map<String, List<LegacyDocFreqPair>> buildLegacyIndex(List<Map<String, Long>> documents) {
+        Map<String, List<LegacyDocFreqPair>> index = new HashMap<>();
+        for (int docNum = 0; docNum < documents.size(); docNum++) {
+            for (Map.Entry<String, Long> entry : documents.get(docNum).entrySet()) {
+                index.computeIfAbsent(entry.getKey(), k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(new LegacyDocFreqPair(docNum, entry.getValue()));
+            }
+        }
+        return index;
+    }
+
+    private static Map<String, PostingList> buildPrimitiveIndex(List<Map<String, Long>> documents) {
+        Map<String, PostingList> index = new ConcurrentHashMap<>();
+        for (int docNum = 0; docNum < documents.size(); docNum++) {
+            for (Map.Entry<String, Long> entry : documents.get(docNum).entrySet()) {
+                index.computeIfAbsent(entry.getKey(), k -> new PostingList()).add(docNum, entry.getValue());
+            }
+        }
+        return index;
+    }
+
+    private static void report(String layout, long bytes, long postings, double seconds) {
+        System.out.printf("%-18s %,14d bytes  %6.1f bytes/posting  built in %.2f s%n",
+                layout, bytes, (double) bytes / postings, seconds);
+    }
+
+    // Tokenizes files exactly like ClientProcessingEngine so both layouts index the same postings
+    static void collectDocuments(File folder, List<Map<String, Long>> documents) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectDocuments(file, documents);
+            } else if (file.isFile()) {
+                String content = new String(Files.readAllBytes(file.toPath()));
+                Map<String, Long> wordFrequencies = new HashMap<>();
+                for (String word : content.split("[^a-zA-Z0-9_-]+")) {
+                    if (word.length() > 3) {
+                        wordFrequencies.put(word, wordFrequencies.getOrDefault(word, 0L) + 1);
+                    }
+                }
+                documents.add(wordFrequencies);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
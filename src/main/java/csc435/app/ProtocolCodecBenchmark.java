@@ -0,0 +1,71 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Encodes and decodes INDEX REQUEST and SEARCH REPLY messages in both wire formats
+// and reports messages per second for each.
+public class ProtocolCodecBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int termsPerDocument = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, termsPerDocument);
+        List<Map<String, Long>> documents = corpus.documents(64);
+        String documentPath = "/data/dataset/folder/subfolder/document-0001.txt";
+
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(new ClientProcessingEngine.DocPathFreqPair(documentPath + i, 1000 - i, i % 3 + 1));
+        }
+
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1; // First round only warms up the JIT
+            long checksum = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                String message = TextProtocol.encodeIndexRequest(1, documentPath, documents.get(i & 63));
+                checksum += TextProtocol.decodeIndexRequest(message).wordFrequencies.size();
+            }
+            print(report, "text   index request", iterations, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                byte[] body = BinaryProtocol.encodeIndexRequest(1, documentPath, documents.get(i & 63));
+                checksum += BinaryProtocol.decodeIndexRequest(body).wordFrequencies.size();
+            }
+            print(report, "binary index request", iterations, start);
+
+            int replyIterations = iterations * 20;
+            start = System.nanoTime();
+            for (int i = 0; i < replyIterations; i++) {
+                checksum += TextProtocol.decodeSearchReply(TextProtocol.encodeSearchReply(results)).size();
+            }
+            print(report, "text   search reply", replyIterations, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < replyIterations; i++) {
+                checksum += BinaryProtocol.decodeSearchReply(BinaryProtocol.encodeSearchReply(results)).size();
+            }
+            print(report, "binary search reply", replyIterations, start);
+
+            if (report) {
+                System.out.println("checksum " + checksum);
+            }
+        }
+
+        Map<String, Long> sample = documents.get(0);
+        System.out.println("Index request size: text " + TextProtocol.encodeIndexRequest(1, documentPath, sample).length()
+                + " bytes, binary " + BinaryProtocol.encodeIndexRequest(1, documentPath, sample).length + " bytes");
+    }
+
+    private static void print(boolean report, String label, int messages, long startNanos) {
+        if (report) {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.printf("%-22s %,12.0f msgs/sec (encode + decode)%n", label, messages / seconds);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package csc435.app;
+
+import java.util.*;
+
+// Evaluates a SearchQuery against the IndexStore and returns the query's top K documents,
+// selected with a bounded heap instead of sorting every match. Once K documents are collected,
+// the posting lists' maximum frequencies per block bound the score of the documents still to
+// come, and documents that cannot beat the K-th best are skipped without being scored.
+// Documents are visited in increasing order and ties go to the lower document number, so a
+// skipped document could at best have tied and lost: the results equal exhaustive evaluation.
+public class QueryEvaluator {
+    private final IndexStore store;
+    private final boolean pruning;
+
+    public static class ScoredDocument {
+        public long documentNumber;
+        public long score;
+
+        public ScoredDocument(long documentNumber, long score) {
+            this.documentNumber = documentNumber;
+            this.score = score;
+        }
+    }
+
+    public QueryEvaluator(IndexStore store) {
+        this(store, true);
+    }
+
+    // Without pruning every posting of every term is scored, for comparing against
+    public QueryEvaluator(IndexStore store, boolean pruning) {
+        this.store = store;
+        this.pruning = pruning;
+    }
+
+    public List<ScoredDocument> evaluate(SearchQuery query) {
+        List<PostingIterator> postings = new ArrayList<>();
+        for (String term : query.distinctTerms()) {
+            postings.add(TermPattern.isPattern(term) ? store.lookupPattern(term, SearchQuery.MAX_EXPANSIONS)
+                    : store.lookupIndex(term));
+        }
+        TopKCollector topK = new TopKCollector(query.maxResults);
+        if (postings.isEmpty()) {
+            return topK.results();
+        }
+
+        if (query.operator == SearchQuery.Operator.AND) {
+            intersect(postings, topK);
+        } else if (pruning) {
+            maxScoreUnion(postings, topK);
+        } else {
+            union(postings, topK);
+        }
+        return topK.results();
+    }
+
+    // Deleted and replaced documents keep their postings until their segment is rewritten
+    private void collect(TopKCollector topK, int documentNumber, long score) {
+        if (store.isLive(documentNumber)) {
+            topK.collect(documentNumber, score);
+        }
+    }
+
+    // Documents containing every term. Candidates come from the rarest term and the other lists
+    // are galloped forward to each candidate, so the cost follows the shortest posting list.
+    private void intersect(List<PostingIterator> postings, TopKCollector topK) {
+        postings.sort(Comparator.comparingLong(PostingIterator::cost));
+        PostingIterator rarest = postings.get(0);
+        // Bound of the scores from the last bounded candidate up to boundEnd
+        long bound = Long.MAX_VALUE;
+        int boundEnd = -1;
+
+        int documentNumber = rarest.next();
+        candidates:
+        while (documentNumber != PostingIterator.NO_MORE_DOCUMENTS) {
+            if (pruning && topK.isFull()) {
+                if (documentNumber > boundEnd) {
+                    bound = 0;
+                    boundEnd = PostingIterator.NO_MORE_DOCUMENTS;
+                    for (PostingIterator list : postings) {
+                        boundEnd = Math.min(boundEnd, list.advanceShallow(documentNumber));
+                        bound += list.blockMaxFrequency();
+                    }
+                }
+                if (bound <= topK.threshold()) {
+                    if (boundEnd == PostingIterator.NO_MORE_DOCUMENTS) {
+                        return;
+                    }
+                    documentNumber = rarest.advance(boundEnd + 1);
+                    continue;
+                }
+            }
+            long score = rarest.frequency();
+            for (int list = 1; list < postings.size(); list++) {
+                PostingIterator other = postings.get(list);
+                int position = other.documentNumber();
+                if (position < documentNumber) {
+                    position = other.advance(documentNumber);
+                }
+                if (position == PostingIterator.NO_MORE_DOCUMENTS) {
+                    return; // A list ran out, so no later candidate can match
+                }
+                if (position != documentNumber) {
+                    documentNumber = rarest.advance(position);
+                    continue candidates;
+                }
+                score += other.frequency();
+            }
+            collect(topK, documentNumber, score);
+            documentNumber = rarest.next();
+        }
+    }
+
+    // Documents containing any term, with frequencies summed over the terms they contain.
+    // The sorted lists are merged document by document, so no per-document accumulator is needed.
+    // Scores every document; maxScoreUnion returns the same results.
+    private void union(List<PostingIterator> postings, TopKCollector topK) {
+        PostingIterator merged = MergingPostingIterator.of(postings);
+        for (int documentNumber = merged.next(); documentNumber != PostingIterator.NO_MORE_DOCUMENTS;
+                documentNumber = merged.next()) {
+            collect(topK, documentNumber, merged.frequency());
+        }
+    }
+
+    // A query term's postings with the block bound last read from them. Windows only move
+    // forward, so a bound stays usable until a window starts past the end of its block.
+    private static class TermPostings {
+        final PostingIterator postings;
+        int blockEnd = -1;
+        int blockMaxFrequency;
+
+        TermPostings(PostingIterator postings) {
+            this.postings = postings;
+        }
+
+        int documentNumber() {
+            return postings.documentNumber();
+        }
+
+        // Bound of the frequencies from target up to blockEnd
+        int blockMaxFrequency(int target) {
+            if (target > blockEnd) {
+                blockEnd = postings.advanceShallow(target);
+                blockMaxFrequency = postings.blockMaxFrequency();
+            }
+            return blockMaxFrequency;
+        }
+    }
+
+    // Block-max MaxScore over the union. The documents are taken in windows that end with the
+    // first block end among the lists. In each window the lists with the smallest block maxima
+    // whose sum cannot beat the threshold are non-essential: only documents on the other lists
+    // are candidates, and a candidate is only looked up in the non-essential lists while its
+    // score so far plus their remaining block maxima could still beat the threshold.
+    private void maxScoreUnion(List<PostingIterator> postings, TopKCollector topK) {
+        TermPostings[] lists = new TermPostings[postings.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new TermPostings(postings.get(i));
+            lists[i].postings.next();
+        }
+        long[] bounds = new long[lists.length]; // bounds[i]: sum of the block maxima of lists 0..i
+        int windowStart = 0;
+        while (true) {
+            int first = PostingIterator.NO_MORE_DOCUMENTS;
+            for (TermPostings list : lists) {
+                first = Math.min(first, list.documentNumber());
+            }
+            windowStart = Math.max(windowStart, first);
+            if (windowStart == PostingIterator.NO_MORE_DOCUMENTS) {
+                return;
+            }
+            int windowEnd = PostingIterator.NO_MORE_DOCUMENTS;
+            for (TermPostings list : lists) {
+                list.blockMaxFrequency(windowStart);
+                windowEnd = Math.min(windowEnd, list.blockEnd);
+            }
+            sortByBlockMax(lists);
+            long threshold = topK.threshold();
+            int essential = 0;
+            long bound = 0;
+            for (int i = 0; i < lists.length; i++) {
+                bound += lists[i].blockMaxFrequency;
+                bounds[i] = bound;
+                if (bound <= threshold) {
+                    essential = i + 1;
+                }
+            }
+
+            if (essential < lists.length) {
+                // Lists that were non-essential in earlier windows may still be behind
+                for (int i = essential; i < lists.length; i++) {
+                    if (lists[i].documentNumber() < windowStart) {
+                        lists[i].postings.advance(windowStart);
+                    }
+                }
+                scoreWindow(lists, essential, bounds, windowEnd, topK);
+            }
+            if (windowEnd == PostingIterator.NO_MORE_DOCUMENTS) {
+                return;
+            }
+            windowStart = windowEnd + 1;
+        }
+    }
+
+    // Scores the window's candidates from lists[essential..] (see maxScoreUnion)
+    private void scoreWindow(TermPostings[] lists, int essential, long[] bounds, int windowEnd, TopKCollector topK) {
+        while (true) {
+            int documentNumber = PostingIterator.NO_MORE_DOCUMENTS;
+            for (int i = essential; i < lists.length; i++) {
+                documentNumber = Math.min(documentNumber, lists[i].documentNumber());
+            }
+            // The last window of lists without blocks ends at NO_MORE_DOCUMENTS itself
+            if (documentNumber > windowEnd || documentNumber == PostingIterator.NO_MORE_DOCUMENTS) {
+                return;
+            }
+            long score = 0;
+            for (int i = essential; i < lists.length; i++) {
+                PostingIterator list = lists[i].postings;
+                if (list.documentNumber() == documentNumber) {
+                    score += list.frequency();
+                    list.next();
+                }
+            }
+            long threshold = topK.threshold();
+            boolean competitive = true;
+            for (int i = essential - 1; i >= 0; i--) {
+                if (score + bounds[i] <= threshold) {
+                    competitive = false;
+                    break;
+                }
+                PostingIterator list = lists[i].postings;
+                int position = list.documentNumber();
+                if (position < documentNumber) {
+                    position = list.advance(documentNumber);
+                }
+                if (position == documentNumber) {
+                    score += list.frequency();
+                }
+            }
+            if (competitive) {
+                // Saturated like MergingPostingIterator's sums in union
+                collect(topK, documentNumber, Math.min(score, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    // Insertion sort: there are few lists and their order changes little between windows
+    private static void sortByBlockMax(TermPostings[] lists) {
+        for (int i = 1; i < lists.length; i++) {
+            TermPostings list = lists[i];
+            int j = i - 1;
+            while (j >= 0 && lists[j].blockMaxFrequency > list.blockMaxFrequency) {
+                lists[j + 1] = lists[j];
+                j--;
+            }
+            lists[j + 1] = list;
+        }
+    }
+}
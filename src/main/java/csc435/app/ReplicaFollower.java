@@ -0,0 +1,206 @@
+package csc435.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// Keeps a follower's in-memory index in step with a primary server. It subscribes to the
+// primary's change stream first, then loads a snapshot and applies every change numbered after
+// it, in order. The PUB socket drops messages for a subscriber that falls too far behind, and a
+// restarted primary starts a new stream; either way the follower loads a new snapshot.
+// Searches running while a snapshot loads see a partly loaded index.
+public class ReplicaFollower implements Runnable {
+    public static final String CHANGE_TOPIC = "CHANGE";
+    public static final String SHUTDOWN_TOPIC = "SERVER_SHUTDOWN";
+
+    private static final int SUBSCRIBE_DELAY_MILLIS = 500;
+    private static final int SNAPSHOT_TIMEOUT_MILLIS = 60_000;
+    private static final int RETRY_DELAY_MILLIS = 2_000;
+
+    private final ZContext context;
+    private final IndexStore store;
+    private final String primaryAddress; // "<host>:<port>"
+    private final int primaryNotifyPort;
+
+    private String streamID;
+    private long appliedSequence;
+    private boolean needsSnapshot = true;
+
+    public ReplicaFollower(ZContext context, IndexStore store, String primaryAddress, int primaryNotifyPort) {
+        this.context = context;
+        this.store = store;
+        this.primaryAddress = primaryAddress;
+        this.primaryNotifyPort = primaryNotifyPort;
+    }
+
+    @Override
+    public void run() {
+        String primaryHost = primaryAddress.substring(0, primaryAddress.lastIndexOf(':'));
+        ZMQ.Socket changeSocket = context.createSocket(SocketType.SUB);
+        changeSocket.setRcvHWM(0); // Changes queue up here while a snapshot loads
+        changeSocket.connect("tcp://" + primaryHost + ":" + primaryNotifyPort);
+        changeSocket.subscribe(CHANGE_TOPIC.getBytes(StandardCharsets.UTF_8));
+        changeSocket.subscribe(SHUTDOWN_TOPIC.getBytes(StandardCharsets.UTF_8));
+
+        // Any message on the control socket tells the follower to stop
+        ZMQ.Socket controlSocket = context.createSocket(SocketType.SUB);
+        controlSocket.connect(ServerProcessingEngine.CONTROL_ENDPOINT);
+        controlSocket.subscribe(ZMQ.SUBSCRIPTION_ALL);
+
+        ZMQ.Poller poller = context.createPoller(2);
+        int changeIndex = poller.register(changeSocket, ZMQ.Poller.POLLIN);
+        int controlIndex = poller.register(controlSocket, ZMQ.Poller.POLLIN);
+
+        // Give the subscription time to reach the primary, so that the changes made after
+        // the snapshot are not missed
+        long nextSnapshotMillis = System.currentTimeMillis() + SUBSCRIBE_DELAY_MILLIS;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (needsSnapshot && System.currentTimeMillis() >= nextSnapshotMillis) {
+                    try {
+                        loadSnapshot();
+                    } catch (IllegalStateException | IllegalArgumentException e) {
+                        System.err.println("Snapshot from " + primaryAddress + " failed: " + e.getMessage());
+                        nextSnapshotMillis = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                    }
+                }
+                if (poller.poll(needsSnapshot ? 100 : -1) < 0 || poller.pollin(controlIndex)) {
+                    break;
+                }
+                if (poller.pollin(changeIndex)) {
+                    ZMsg message = ZMsg.recvMsg(changeSocket);
+                    if (message != null) {
+                        receive(message);
+                        message.destroy();
+                    }
+                }
+            }
+        } catch (org.zeromq.ZMQException e) {
+            // Thrown if the context is closed while waiting
+        }
+
+        poller.close();
+        controlSocket.close();
+        changeSocket.close();
+    }
+
+    private void receive(ZMsg message) {
+        String topic = message.popString();
+        if (SHUTDOWN_TOPIC.equals(topic)) {
+            System.out.println("Primary " + primaryAddress + " shut down; waiting for it to come back.");
+            return;
+        }
+        if (needsSnapshot) {
+            return; // The next snapshot includes this change
+        }
+        BinaryProtocol.Decoder info = new BinaryProtocol.Decoder(message.pop().getData());
+        String changeStreamID = info.readString();
+        long sequence = info.readVarLong();
+        if (!changeStreamID.equals(streamID)) {
+            System.out.println("Primary " + primaryAddress + " restarted; loading a new snapshot.");
+            needsSnapshot = true;
+            return;
+        }
+        if (sequence <= appliedSequence) {
+            return; // Already in the snapshot
+        }
+        if (sequence != appliedSequence + 1) {
+            System.out.println("Missed changes " + (appliedSequence + 1) + " to " + (sequence - 1)
+                    + " from " + primaryAddress + "; loading a new snapshot.");
+            needsSnapshot = true;
+            return;
+        }
+
+        WriteAheadLog.decodeRecord(message.pop().getData(), new WriteAheadLog.RecordConsumer() {
+            public void index(List<IndexRequest> documents) {
+                store.updateIndexBatch(documents);
+            }
+
+            public void delete(List<String> documentPaths) {
+                store.deleteDocuments(documentPaths);
+            }
+        });
+        appliedSequence = sequence;
+    }
+
+    // Loads the snapshot one chunk per request, each applied as it arrives
+    private void loadSnapshot() {
+        long start = System.nanoTime();
+        try (ZMQ.Socket requestSocket = context.createSocket(SocketType.REQ)) {
+            requestSocket.setReceiveTimeOut(SNAPSHOT_TIMEOUT_MILLIS);
+            requestSocket.setLinger(0);
+            requestSocket.connect("tcp://" + primaryAddress);
+
+            IndexStore.SnapshotConsumer loader = null;
+            String snapshotStreamID = null;
+            long sequence = 0;
+            long snapshotID = 0; // 0 starts a snapshot
+            long bytes = 0;
+            int chunks = 0;
+            do {
+                ZMsg reply = requestChunk(requestSocket, snapshotID);
+                BinaryProtocol.Decoder info = new BinaryProtocol.Decoder(reply.pop().getData());
+                String chunkStreamID = info.readString();
+                long chunkSequence = info.readVarLong();
+                if (loader == null) {
+                    loader = store.loadSnapshot();
+                    snapshotStreamID = chunkStreamID;
+                    sequence = chunkSequence;
+                } else if (!chunkStreamID.equals(snapshotStreamID) || chunkSequence != sequence) {
+                    throw new IllegalStateException("Primary restarted while sending a snapshot");
+                }
+                snapshotID = BinaryProtocol.decodeVarLong(reply.pop().getData());
+                byte[] chunk = reply.pop().getData();
+                BinaryProtocol.decodeSnapshotFrame(chunk, loader);
+                bytes += chunk.length;
+                chunks++;
+                reply.destroy();
+            } while (snapshotID != 0);
+
+            streamID = snapshotStreamID;
+            appliedSequence = sequence;
+            needsSnapshot = false;
+            System.out.printf("Loaded snapshot of %s at change %d (%d bytes in %d chunks) in %.1f ms.%n",
+                    primaryAddress, sequence, bytes, chunks, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Sends the request again for as long as the primary's index lane is busy
+    private ZMsg requestChunk(ZMQ.Socket requestSocket, long snapshotID) {
+        while (true) {
+            ZMsg request = new ZMsg();
+            request.add(BinaryProtocol.header(BinaryProtocol.SNAPSHOT_REQUEST));
+            if (snapshotID != 0) {
+                request.add(BinaryProtocol.encodeVarLong(snapshotID));
+            }
+            request.send(requestSocket);
+            ZMsg reply = ZMsg.recvMsg(requestSocket);
+            if (reply == null) {
+                throw new IllegalStateException("No reply within " + SNAPSHOT_TIMEOUT_MILLIS / 1000 + " s");
+            }
+            byte type = BinaryProtocol.messageType(reply.pop().getData());
+            if (type == BinaryProtocol.SNAPSHOT_REPLY) {
+                return reply;
+            }
+            byte[] body = reply.isEmpty() ? new byte[0] : reply.pop().getData();
+            reply.destroy();
+            if (type == BinaryProtocol.ERROR_REPLY) {
+                throw new IllegalStateException(BinaryProtocol.decodeString(body));
+            }
+            if (type != BinaryProtocol.BUSY_REPLY) {
+                throw new IllegalStateException("Unexpected reply type " + type);
+            }
+            BinaryProtocol.Decoder busy = new BinaryProtocol.Decoder(body);
+            busy.readVarLong(); // Batch ID, not used by snapshots
+            try {
+                Thread.sleep(busy.readVarLong());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading a snapshot");
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package csc435.app;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.zeromq.ZMsg;
+
+// Turns one request message into its reply. Binary and text clients are told apart by
+// the first frame, so both protocols can be served by the same workers.
+// With metrics, each request's type and the time it spent in each stage are recorded.
+public class RequestHandler {
+    private final IndexStore store;
+    private final QueryEvaluator evaluator;
+    private final SearchCache cache; // Shared by all workers, or null
+    private final boolean readOnly; // Followers only change their index through the change stream
+    private final ServerMetrics metrics; // Shared by all workers, or null
+
+    // When a request finished decoding and executing; stages it does not have take no time
+    private static class Timing {
+        ServerMetrics.RequestType type = ServerMetrics.RequestType.OTHER;
+        long decoded;
+        long executed;
+        boolean failed;
+
+        Timing(long start) {
+            decoded = start;
+            executed = start;
+        }
+
+        void decoded() {
+            decoded = System.nanoTime();
+            executed = decoded;
+        }
+
+        void executed() {
+            executed = System.nanoTime();
+        }
+    }
+
+    public RequestHandler(IndexStore store) {
+        this(store, null, false);
+    }
+
+    public RequestHandler(IndexStore store, SearchCache cache, boolean readOnly) {
+        this(store, cache, readOnly, null);
+    }
+
+    public RequestHandler(IndexStore store, SearchCache cache, boolean readOnly, ServerMetrics metrics) {
+        this.store = store;
+        this.evaluator = new QueryEvaluator(store);
+        this.cache = cache;
+        this.readOnly = readOnly;
+        this.metrics = metrics;
+    }
+
+    public ZMsg handle(ZMsg request) {
+        return handle(request, 0);
+    }
+
+    // queueNanos is how long the request waited before a worker took it
+    public ZMsg handle(ZMsg request, long queueNanos) {
+        long start = System.nanoTime();
+        Timing timing = new Timing(start);
+        ZMsg reply;
+        byte[] firstFrame = request.isEmpty() ? new byte[0] : request.getFirst().getData();
+        boolean binary = BinaryProtocol.isBinary(firstFrame);
+        String message = binary ? null : new String(firstFrame, StandardCharsets.UTF_8);
+        try {
+            if (binary) {
+                reply = handleBinary(request, timing);
+            } else {
+                reply = new ZMsg();
+                reply.add(handleText(message, timing));
+            }
+        } catch (RuntimeException e) {
+            // A malformed request must not take the worker, and its place in the lane, with it
+            System.err.println("Request failed: " + e);
+            timing.failed = true;
+            reply = binary ? errorReply(e.getMessage()) : new ZMsg();
+            if (!binary) {
+                reply.add(textError(message));
+            }
+        }
+        if (metrics != null) {
+            metrics.record(timing.type, queueNanos, timing.decoded - start, timing.executed - timing.decoded,
+                    System.nanoTime() - timing.executed, timing.failed);
+        }
+        return reply;
+    }
+
+    private String handleText(String message, Timing timing) {
+        if (message.startsWith("REGISTER REQUEST")) {
+            timing.type = ServerMetrics.RequestType.REGISTER;
+            long clientID = registerClient();
+            timing.executed();
+            return String.valueOf(clientID);
+
+        } else if (message.startsWith("INDEX REQUEST")) {
+            timing.type = ServerMetrics.RequestType.INDEX;
+            IndexRequest indexRequest = TextProtocol.decodeIndexRequest(message);
+            timing.decoded();
+            if (indexRequest == null || readOnly) {
+                timing.failed = true;
+                return "INDEX REPLY: ERROR";
+            }
+            try {
+                indexDocument(indexRequest);
+            } catch (UncheckedIOException e) {
+                System.err.println("Index update failed: " + e.getMessage());
+                timing.failed = true;
+                return "INDEX REPLY: ERROR";
+            }
+            timing.executed();
+            return "INDEX REPLY: OK";
+
+        } else if (message.startsWith("DELETE REQUEST")) {
+            timing.type = ServerMetrics.RequestType.DELETE;
+            String documentPath = TextProtocol.decodeDeleteRequest(message);
+            timing.decoded();
+            if (documentPath == null || readOnly) {
+                timing.failed = true;
+                return "DELETE REPLY: ERROR";
+            }
+            try {
+                store.deleteDocuments(List.of(documentPath));
+            } catch (UncheckedIOException e) {
+                System.err.println("Delete failed: " + e.getMessage());
+                timing.failed = true;
+                return "DELETE REPLY: ERROR";
+            }
+            timing.executed();
+            return "DELETE REPLY: OK";
+
+        } else if (message.startsWith("SEARCH REQUEST")) {
+            timing.type = ServerMetrics.RequestType.SEARCH;
+            SearchQuery query = TextProtocol.decodeSearchRequest(message);
+            timing.decoded();
+            ArrayList<ClientProcessingEngine.DocPathFreqPair> results = search(query);
+            timing.executed();
+            return TextProtocol.encodeSearchReply(results);
+
+        } else if (message.equals("QUIT")) {
+            timing.type = ServerMetrics.RequestType.QUIT;
+            // A disconnecting client must not take the worker down with it;
+            // REP still owes a reply, which the proxy drops if the client is gone.
+            return "QUIT REPLY: OK";
+        }
+        timing.failed = true;
+        return "ERROR: Unrecognized request";
+    }
+
+    private ZMsg handleBinary(ZMsg request, Timing timing) {
+        ZMsg reply = new ZMsg();
+        try {
+            byte type = BinaryProtocol.messageType(request.pop().getData());
+            switch (type) {
+                case BinaryProtocol.REGISTER_REQUEST:
+                    timing.type = ServerMetrics.RequestType.REGISTER;
+                    long clientID = registerClient();
+                    timing.executed();
+                    reply.add(BinaryProtocol.header(BinaryProtocol.REGISTER_REPLY));
+                    reply.add(BinaryProtocol.encodeRegisterReply(clientID, store.getIndexID()));
+                    break;
+
+                case BinaryProtocol.INDEX_REQUEST:
+                    timing.type = ServerMetrics.RequestType.INDEX;
+                    checkWritable();
+                    IndexRequest document = BinaryProtocol.decodeIndexRequest(body(request));
+                    timing.decoded();
+                    indexDocument(document);
+                    timing.executed();
+                    reply.add(BinaryProtocol.header(BinaryProtocol.INDEX_REPLY));
+                    reply.add(new byte[] { BinaryProtocol.STATUS_OK });
+                    break;
+
+                case BinaryProtocol.INDEX_BATCH_REQUEST:
+                    timing.type = ServerMetrics.RequestType.INDEX_BATCH;
+                    checkWritable();
+                    long batchId = BinaryProtocol.decodeVarLong(body(request));
+                    List<IndexRequest> documents = new ArrayList<>(request.size());
+                    while (!request.isEmpty()) {
+                        documents.add(BinaryProtocol.decodeIndexRequest(request.pop().getData()));
+                    }
+                    timing.decoded();
+                    store.updateIndexBatch(documents);
+                    timing.executed();
+                    reply.add(BinaryProtocol.header(BinaryProtocol.INDEX_BATCH_REPLY));
+                    reply.add(BinaryProtocol.encodeBatchReply(batchId, BinaryProtocol.STATUS_OK));
+                    break;
+
+                case BinaryProtocol.DELETE_REQUEST:
+                    timing.type = ServerMetrics.RequestType.DELETE;
+                    checkWritable();
+                    List<String> documentPaths = BinaryProtocol.decodeDeleteRequest(body(request));
+                    timing.decoded();
+                    int deleted = store.deleteDocuments(documentPaths);
+                    timing.executed();
+                    reply.add(BinaryProtocol.header(BinaryProtocol.DELETE_REPLY));
+                    reply.add(BinaryProtocol.encodeVarLong(deleted));
+                    break;
+
+                case BinaryProtocol.SEARCH_REQUEST:
+                    timing.type = ServerMetrics.RequestType.SEARCH;
+                    SearchQuery query = BinaryProtocol.decodeSearchRequest(body(request));
+                    timing.decoded();
+                    ArrayList<ClientProcessingEngine.DocPathFreqPair> results = search(query);
+                    timing.executed();
+                    reply.add(BinaryProtocol.header(BinaryProtocol.SEARCH_REPLY));
+                    reply.add(BinaryProtocol.encodeSearchReply(results));
+                    break;
+
+                case BinaryProtocol.SNAPSHOT_REQUEST:
+                    timing.type = ServerMetrics.RequestType.SNAPSHOT;
+                    reply.add(BinaryProtocol.header(BinaryProtocol.SNAPSHOT_REPLY));
+                    snapshot(request, reply);
+                    timing.executed();
+                    break;
+
+                case BinaryProtocol.QUIT_REQUEST:
+                    timing.type = ServerMetrics.RequestType.QUIT;
+                    reply.add(BinaryProtocol.header(BinaryProtocol.QUIT_REPLY));
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown message type " + type);
+            }
+        } catch (IllegalArgumentException | IllegalStateException | UncheckedIOException e) {
+            timing.failed = true;
+            reply.destroy();
+            reply = errorReply(e.getMessage());
+        }
+        return reply;
+    }
+
+    private static ZMsg errorReply(String error) {
+        ZMsg reply = new ZMsg();
+        reply.add(BinaryProtocol.header(BinaryProtocol.ERROR_REPLY));
+        reply.add(BinaryProtocol.encodeString(String.valueOf(error)));
+        return reply;
+    }
+
+    // "INDEX REQUEST|..." fails with "INDEX REPLY: ERROR", as the request's own checks answer
+    private static String textError(String message) {
+        int end = message.indexOf(" REQUEST");
+        return end > 0 ? message.substring(0, end) + " REPLY: ERROR" : "ERROR: Unrecognized request";
+    }
+
+    private static byte[] body(ZMsg request) {
+        if (request.isEmpty()) {
+            throw new IllegalArgumentException("Missing message body");
+        }
+        return request.pop().getData();
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Read-only follower; send index updates to the primary server");
+        }
+    }
+
+    // For a follower catching up: a copy of the index and the change stream position it is at,
+    // one chunk per request. A request without a body starts a snapshot; the others name the
+    // snapshot to continue, as given by the previous reply, which gives 0 after the last chunk.
+    private void snapshot(ZMsg request, ZMsg reply) {
+        ChangeStream stream = store.getChangeStream();
+        if (stream == null) {
+            throw new IllegalStateException("This server does not publish a change stream; start it with --publish");
+        }
+        IndexStore.Snapshot snapshot;
+        if (request.isEmpty()) {
+            snapshot = store.openSnapshot();
+        } else {
+            long snapshotID = BinaryProtocol.decodeVarLong(body(request));
+            snapshot = store.getSnapshot(snapshotID);
+            if (snapshot == null) {
+                throw new IllegalStateException("Snapshot " + snapshotID + " is complete or expired");
+            }
+        }
+        BinaryProtocol.SnapshotEncoder encoder = new BinaryProtocol.SnapshotEncoder();
+        boolean more = snapshot.read(encoder, encoder::isFull);
+        reply.add(BinaryProtocol.encodeSnapshotInfo(stream.getStreamID(), snapshot.sequence));
+        reply.add(BinaryProtocol.encodeVarLong(more ? snapshot.snapshotID : 0));
+        reply.add(encoder.toByteArray());
+        if (!more) {
+            System.out.printf("Sent index snapshot at change %d in %.1f ms.%n",
+                    snapshot.sequence, (System.nanoTime() - snapshot.startNanos) / 1e6);
+        }
+    }
+
+    private long registerClient() {
+        return store.nextClientID();
+    }
+
+    private void indexDocument(IndexRequest indexRequest) {
+        // Goes through the batch path so that the document is written to the log
+        store.updateIndexBatch(List.of(indexRequest));
+    }
+
+    private ArrayList<ClientProcessingEngine.DocPathFreqPair> search(SearchQuery query) {
+        if (cache != null) {
+            return cache.get(query, () -> evaluate(query));
+        }
+        return evaluate(query);
+    }
+
+    private ArrayList<ClientProcessingEngine.DocPathFreqPair> evaluate(SearchQuery query) {
+        // Each result carries: ownerID, docPath, frequency
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>();
+        for (QueryEvaluator.ScoredDocument document : evaluator.evaluate(query)) {
+            long docNum = document.documentNumber;
+            long docOwner = store.getDocumentOwner(docNum); // ADDED: get the client ID
+            String docPath = store.getDocument(docNum);
+
+            if ("UNKNOWN_DOCUMENT".equals(docPath)) {
+                System.err.println("WARNING: Document number " + docNum + " not found in store!");
+            }
+
+            results.add(new ClientProcessingEngine.DocPathFreqPair(docPath, document.score, docOwner));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,109 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Query latency for high-frequency terms at several index sizes, comparing QueryEvaluator's
+// top-K selection with the previous approach of accumulating every match into a HashMap
+// and sorting it, and exhaustive top-K evaluation with Block-Max WAND pruning. Burstiness makes
+// term frequencies skewed as in real text (see SyntheticCorpus). With a data directory the
+// index is flushed to segments and searched there instead of in memory.
+public class SearchBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String sizes = args.length > 0 ? args[0] : "10000,50000,200000";
+        int termsPerDocument = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        double burstiness = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        Path dataDirectory = args.length > 4 ? Path.of(args[4]) : null;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, termsPerDocument).withBurstiness(burstiness);
+        List<SearchQuery> queries = List.of(
+                new SearchQuery(List.of(corpus.term(0)), SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(1)), SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(1), corpus.term(2)), SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(1), corpus.term(2), corpus.term(3), corpus.term(4)),
+                        SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(50)), SearchQuery.Operator.OR),
+                new SearchQuery(List.of(corpus.term(0), corpus.term(1)), SearchQuery.Operator.AND));
+
+        System.out.println("documents,query,matches,legacy ms,top-k ms,pruned ms");
+        for (String size : sizes.split(",")) {
+            int numDocuments = Integer.parseInt(size.trim());
+            IndexStore store = dataDirectory == null ? new IndexStore()
+                    : new IndexStore(Files.createTempDirectory(Files.createDirectories(dataDirectory), "search-"));
+            for (int i = 0; i < numDocuments; i++) {
+                store.updateIndex(store.putDocument("/bench/doc-" + i, 1), corpus.document(i));
+            }
+            if (dataDirectory != null) {
+                store.flush();
+            }
+
+            QueryEvaluator exhaustive = new QueryEvaluator(store, false);
+            QueryEvaluator pruned = new QueryEvaluator(store);
+            for (SearchQuery query : queries) {
+                if (!sameResults(exhaustive.evaluate(query), pruned.evaluate(query))) {
+                    throw new IllegalStateException("Pruned results differ for " + query);
+                }
+                int matches = legacySearch(store, query);
+                double legacyMillis = time(repetitions, () -> legacySearch(store, query));
+                double topKMillis = time(repetitions, () -> exhaustive.evaluate(query).size());
+                double prunedMillis = time(repetitions, () -> pruned.evaluate(query).size());
+                System.out.printf("%d,%s,%d,%.3f,%.3f,%.3f%n", numDocuments, query, matches, legacyMillis, topKMillis,
+                        prunedMillis);
+            }
+            store.close();
+        }
+    }
+
+    private static boolean sameResults(List<QueryEvaluator.ScoredDocument> expected,
+            List<QueryEvaluator.ScoredDocument> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).documentNumber != actual.get(i).documentNumber
+                    || expected.get(i).score != actual.get(i).score) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Average milliseconds per run after as many warmup runs
+    private static double time(int repetitions, java.util.function.IntSupplier search) {
+        long sink = 0;
+        for (int i = 0; i < repetitions; i++) {
+            sink += search.getAsInt();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            sink += search.getAsInt();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / repetitions;
+        return sink == Long.MIN_VALUE ? -1 : millis;
+    }
+
+    // The evaluation handleSearchRequest used to do: HashMap accumulation, full sort, keep 10
+    private static int legacySearch(IndexStore store, SearchQuery query) {
+        Map<Long, Long> docResults = new HashMap<>();
+        Map<Long, Integer> termsMatched = new HashMap<>();
+        List<String> terms = query.distinctTerms();
+        for (String term : terms) {
+            PostingIterator postings = store.lookupIndex(term);
+            for (int doc = postings.next(); doc != PostingIterator.NO_MORE_DOCUMENTS; doc = postings.next()) {
+                docResults.merge((long) doc, (long) postings.frequency(), Long::sum);
+                termsMatched.merge((long) doc, 1, Integer::sum);
+            }
+        }
+        if (query.operator == SearchQuery.Operator.AND) {
+            docResults.keySet().removeIf(docNum -> termsMatched.get(docNum) < terms.size());
+        }
+
+        List<Map.Entry<Long, Long>> sortedResults = new ArrayList<>(docResults.entrySet());
+        sortedResults.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return sortedResults.size();
+    }
+}
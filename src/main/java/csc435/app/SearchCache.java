@@ -0,0 +1,139 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Bounded cache of search results keyed by the normalized query: its distinct terms in sorted
+// order, the operator and the number of results. Each entry records the index versions of its
+// terms from before it was computed and is only served while they are unchanged, so an index
+// update invalidates exactly the entries whose terms it touched, plus every entry when a
+// document is deleted or replaced.
+// The entries are split over independently locked LRU segments so that workers rarely contend.
+public class SearchCache {
+    private static final int SEGMENTS = 16;
+
+    private final IndexStore store;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+        final long[] versions;
+        final ArrayList<ClientProcessingEngine.DocPathFreqPair> results;
+
+        Entry(long[] versions, ArrayList<ClientProcessingEngine.DocPathFreqPair> results) {
+            this.versions = versions;
+            this.results = results;
+        }
+    }
+
+    @SuppressWarnings("serial") // Never serialized
+    private class Segment extends LinkedHashMap<String, Entry> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true); // Access order, so the eldest entry is the least recently used
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public SearchCache(IndexStore store, int capacity) {
+        this.store = store;
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    // Returns the cached results of the query, or computes and caches them. The results are
+    // shared between callers and must not be modified.
+    public ArrayList<ClientProcessingEngine.DocPathFreqPair> get(SearchQuery query,
+            Supplier<ArrayList<ClientProcessingEngine.DocPathFreqPair>> search) {
+        List<String> terms = query.distinctTerms();
+        Collections.sort(terms);
+        // One term means the same with either operator
+        SearchQuery.Operator operator = terms.size() == 1 ? SearchQuery.Operator.AND : query.operator;
+        String key = String.join("\u0000", terms) + "\u0000" + operator + "\u0000" + query.maxResults;
+        long[] versions = versions(terms);
+
+        Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null) {
+            if (Arrays.equals(entry.versions, versions)) {
+                hits.increment();
+                return entry.results;
+            }
+            invalidations.increment();
+        }
+        misses.increment();
+
+        // Versions read before searching: an update that lands during the search leaves the
+        // entry with older versions, so it is not served afterwards
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = search.get();
+        synchronized (segment) {
+            segment.put(key, new Entry(versions, results));
+        }
+        return results;
+    }
+
+    private long[] versions(List<String> terms) {
+        long[] versions = new long[terms.size() + 1];
+        versions[0] = store.getDocumentsVersion();
+        for (int i = 0; i < terms.size(); i++) {
+            versions[i + 1] = store.getTermVersion(terms.get(i));
+        }
+        return versions;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Misses that found an entry made stale by an index update
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        return String.format("Search cache: %d entries, %d hits, %d misses (%.1f%% hit rate), %d invalidated, %d evicted",
+                size(), hitCount, getMisses(), lookups == 0 ? 0.0 : 100.0 * hitCount / lookups,
+                getInvalidations(), getEvictions());
+    }
+}
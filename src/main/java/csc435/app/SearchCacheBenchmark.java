@@ -0,0 +1,107 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.zeromq.ZMsg;
+
+// Search throughput through RequestHandler with and without the search cache, for a workload
+// that repeats a small set of queries. The last run keeps indexing new documents while
+// searching, so cached entries are invalidated as their terms change.
+public class SearchCacheBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int distinctQueries = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 50);
+        IndexStore store = new IndexStore();
+        List<IndexRequest> batch = new ArrayList<>();
+        for (int i = 0; i < numDocuments; i++) {
+            batch.add(new IndexRequest(1, "/bench/doc-" + i, corpus.document(i)));
+            if (batch.size() == 256) {
+                store.updateIndexBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.updateIndexBatch(batch);
+
+        // Popular one to three term queries; the first ones are asked most often
+        Random random = new Random(7);
+        List<SearchQuery> queries = new ArrayList<>();
+        for (int i = 0; i < distinctQueries; i++) {
+            List<String> terms = new ArrayList<>();
+            int numTerms = 1 + random.nextInt(3);
+            for (int j = 0; j < numTerms; j++) {
+                terms.add(corpus.term(random.nextInt(200)));
+            }
+            queries.add(new SearchQuery(terms, random.nextBoolean() ? SearchQuery.Operator.AND : SearchQuery.Operator.OR));
+        }
+
+        System.out.println("mode,threads,searches/s,hit rate");
+        run("uncached", store, null, queries, numThreads, seconds, null);
+        run("cached", store, new SearchCache(store, 10_000), queries, numThreads, seconds, null);
+        run("cached+updates", store, new SearchCache(store, 10_000), queries, numThreads, seconds, corpus);
+    }
+
+    private static void run(String mode, IndexStore store, SearchCache cache, List<SearchQuery> queries,
+            int numThreads, int seconds, SyntheticCorpus updates) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder searches = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                RequestHandler handler = new RequestHandler(store, cache, false);
+                Random random = new Random(seed);
+                while (running.get()) {
+                    // Skewed choice: query i is asked about twice as often as query 2i
+                    int index = (int) Math.min(queries.size() - 1, Math.floor(Math.pow(queries.size(), random.nextDouble())) - 1);
+                    ZMsg request = new ZMsg();
+                    request.add(BinaryProtocol.header(BinaryProtocol.SEARCH_REQUEST));
+                    request.add(BinaryProtocol.encodeSearchRequest(queries.get(index)));
+                    handler.handle(request).destroy();
+                    searches.increment();
+                }
+            }));
+        }
+        if (updates != null) {
+            // About 100 batches of 10 new documents per second
+            threads.add(new Thread(() -> {
+                long next = 1_000_000;
+                while (running.get()) {
+                    List<IndexRequest> batch = new ArrayList<>();
+                    for (int i = 0; i < 10; i++, next++) {
+                        batch.add(new IndexRequest(2, "/bench/update-" + next, updates.document(next)));
+                    }
+                    store.updateIndexBatch(batch);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double hitRate = 0;
+        if (cache != null && cache.getHits() + cache.getMisses() > 0) {
+            hitRate = (double) cache.getHits() / (cache.getHits() + cache.getMisses());
+        }
+        System.out.printf("%s,%d,%.0f,%.3f%n", mode, numThreads, searches.sum() / (double) seconds, hitRate);
+        if (cache != null) {
+            System.out.println("# " + cache);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Measures search round-trip latency against a running server and reports p50/p99.
+// Requests are spaced out so they arrive at idle workers, which is where dispatch delay shows.
+public class SearchLatencyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Usage: java SearchLatencyBenchmark <serverIP> <serverPort> <numSearches> [idleMillis] [datasetPath]");
+            return;
+        }
+
+        String serverIP = args[0];
+        String serverPort = args[1];
+        int numSearches = Integer.parseInt(args[2]);
+        long idleMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+        ClientProcessingEngine engine = new ClientProcessingEngine();
+        engine.connect(serverIP, serverPort);
+        if (args.length > 4) {
+            engine.indexFiles(args[4]);
+        }
+
+        List<ArrayList<String>> queries = List.of(
+                new ArrayList<>(List.of("the")),
+                new ArrayList<>(List.of("child-like")),
+                new ArrayList<>(List.of("child-like", "cats")));
+
+        // Warm up connections and the JIT before measuring
+        for (int i = 0; i < Math.min(100, numSearches); i++) {
+            engine.searchFiles(queries.get(i % queries.size()));
+        }
+
+        long[] latencies = new long[numSearches];
+        for (int i = 0; i < numSearches; i++) {
+            Thread.sleep(idleMillis);
+            long start = System.nanoTime();
+            engine.searchFiles(queries.get(i % queries.size()));
+            latencies[i] = System.nanoTime() - start;
+        }
+        engine.disconnect();
+
+        Arrays.sort(latencies);
+        System.out.printf("searches=%d p50=%.3f ms p99=%.3f ms max=%.3f ms%n", numSearches,
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static long percentile(long[] sortedLatencies, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+    }
+}
@@ -0,0 +1,62 @@
+package csc435.app;
+
+import java.util.*;
+
+// Search terms combined with one boolean operator. AND returns only documents containing every
+// term; OR returns documents containing any term. Both rank by the summed term frequencies.
+// A term with wildcards, like "config*", stands for all the terms it matches (see TermPattern),
+// as if they were one term.
+public class SearchQuery {
+    public enum Operator { AND, OR }
+
+    public static final int DEFAULT_MAX_RESULTS = 10;
+    // Upper bound the server applies to the number of requested results
+    public static final int MAX_RESULTS_LIMIT = 1000;
+    // A wildcard term matches at most this many terms, the first ones in sorted order
+    public static final int MAX_EXPANSIONS = 128;
+
+    public List<String> terms;
+    public Operator operator;
+    public int maxResults;
+
+    public SearchQuery(List<String> terms, Operator operator) {
+        this(terms, operator, DEFAULT_MAX_RESULTS);
+    }
+
+    public SearchQuery(List<String> terms, Operator operator, int maxResults) {
+        this.terms = terms;
+        this.operator = operator;
+        this.maxResults = Math.max(1, Math.min(maxResults, MAX_RESULTS_LIMIT));
+    }
+
+    // Parses "a AND b AND c" or "a OR b"; a single term is an AND query of one term.
+    // There is no precedence or grouping, so a query mixing AND and OR is rejected.
+    public static SearchQuery parse(String query) {
+        return parse(query, DEFAULT_MAX_RESULTS);
+    }
+
+    public static SearchQuery parse(String query, int maxResults) {
+        Operator operator = query.contains(" OR ") ? Operator.OR : Operator.AND;
+        if (operator == Operator.OR && query.contains(" AND ")) {
+            throw new IllegalArgumentException("A query cannot mix AND and OR: " + query);
+        }
+        String separator = operator == Operator.OR ? " OR " : " AND ";
+        List<String> terms = new ArrayList<>();
+        for (String term : query.split(separator)) {
+            if (!term.isBlank()) {
+                terms.add(term.trim());
+            }
+        }
+        return new SearchQuery(terms, operator, maxResults);
+    }
+
+    // Distinct terms in query order; repeating a term must not count it twice
+    public List<String> distinctTerms() {
+        return new ArrayList<>(new LinkedHashSet<>(terms));
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" " + operator + " ", terms);
+    }
+}
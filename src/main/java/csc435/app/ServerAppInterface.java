@@ -20,6 +20,26 @@ public class ServerAppInterface {
                 engine.shutdown();
                 break;
             }
+            if (command.equals("cache")) {
+                SearchCache cache = engine.getSearchCache();
+                System.out.println(cache == null ? "Search cache disabled." : cache.toString());
+                continue;
+            }
+            if (command.equals("stats")) {
+                System.out.println(engine.getStats());
+                continue;
+            }
+            if (command.equals("queues")) {
+                if (engine.getSearchLane() == null) {
+                    System.out.println("No request queues in virtual thread mode.");
+                } else {
+                    System.out.println(engine.getSearchLane());
+                    if (engine.getIndexLane() != null) {
+                        System.out.println(engine.getIndexLane());
+                    }
+                }
+                continue;
+            }
             System.out.println("Unrecognized command!");
         }
         sc.close();
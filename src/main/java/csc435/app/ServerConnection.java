@@ -0,0 +1,186 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// A client's sockets to one server: a REQ socket for commands and, for binary clients, a DEALER
+// socket for pipelined index batches. Requests are split into send and receive halves so that
+// a client can have the same request outstanding on several servers at once. A request the
+// server is too busy to queue is sent again after the delay it asks for.
+public class ServerConnection {
+    private final String address;
+    private final boolean useTextProtocol;
+    private final ZMQ.Socket requestSocket;
+    private ZMQ.Socket indexSocket;
+    private long clientID;
+    private String indexID; // Null for text protocol servers
+    // The request awaiting its reply, kept to send again if the server is busy
+    private byte lastRequestType;
+    private byte[] lastRequestBody;
+    private String lastTextRequest;
+    private long busyReplies;
+
+    // address is "<host>:<port>"
+    public ServerConnection(ZContext context, String address, boolean useTextProtocol) {
+        this.address = address;
+        this.useTextProtocol = useTextProtocol;
+        this.requestSocket = context.createSocket(SocketType.REQ);
+        requestSocket.connect("tcp://" + address);
+
+        if (useTextProtocol) {
+            sendText("REGISTER REQUEST");
+            this.clientID = Long.parseLong(receiveText());
+        } else {
+            sendBinary(BinaryProtocol.REGISTER_REQUEST, null);
+            BinaryProtocol.Decoder reply = new BinaryProtocol.Decoder(receiveBinary(BinaryProtocol.REGISTER_REPLY));
+            this.clientID = reply.readVarLong();
+            this.indexID = reply.hasRemaining() ? reply.readString() : null;
+
+            indexSocket = context.createSocket(SocketType.DEALER);
+            indexSocket.connect("tcp://" + address);
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    // Client ID assigned by this server when the connection registered
+    public long getClientID() {
+        return clientID;
+    }
+
+    public String getIndexID() {
+        return indexID;
+    }
+
+    // Replies that asked for a request to be sent again later
+    public long getBusyReplies() {
+        return busyReplies;
+    }
+
+    // Batches are sent on the DEALER socket; only available with the binary protocol
+    public IndexBatchSender newBatchSender(long clientID, int documentsPerBatch, int maxBatchesInFlight) {
+        return new IndexBatchSender(indexSocket, clientID, documentsPerBatch, maxBatchesInFlight);
+    }
+
+    // One round trip per document, for text protocol servers
+    public void indexDocument(long clientID, String documentPath, Map<String, Long> wordFrequencies) {
+        sendText(TextProtocol.encodeIndexRequest(clientID, documentPath, wordFrequencies));
+        receiveTextOk("INDEX REPLY: OK");
+    }
+
+    public void deleteDocuments(List<String> documentPaths) {
+        if (useTextProtocol) {
+            for (String documentPath : documentPaths) {
+                sendText(TextProtocol.encodeDeleteRequest(documentPath));
+                receiveTextOk("DELETE REPLY: OK");
+            }
+        } else {
+            sendBinary(BinaryProtocol.DELETE_REQUEST, BinaryProtocol.encodeDeleteRequest(documentPaths));
+            receiveBinary(BinaryProtocol.DELETE_REPLY);
+        }
+    }
+
+    public void sendSearch(SearchQuery query) {
+        if (useTextProtocol) {
+            sendText(TextProtocol.encodeSearchRequest(query));
+        } else {
+            sendBinary(BinaryProtocol.SEARCH_REQUEST, BinaryProtocol.encodeSearchRequest(query));
+        }
+    }
+
+    public ArrayList<ClientProcessingEngine.DocPathFreqPair> receiveSearch() {
+        if (useTextProtocol) {
+            return TextProtocol.decodeSearchReply(receiveText());
+        }
+        return BinaryProtocol.decodeSearchReply(receiveBinary(BinaryProtocol.SEARCH_REPLY));
+    }
+
+    public void close() {
+        // Here, if you prefer to send DISCONNECT rather than QUIT, update accordingly.
+        if (useTextProtocol) {
+            requestSocket.send("QUIT");
+        } else {
+            sendBinary(BinaryProtocol.QUIT_REQUEST, null);
+        }
+        requestSocket.close();
+        if (indexSocket != null) {
+            indexSocket.close();
+        }
+    }
+
+    private void sendText(String message) {
+        lastTextRequest = message;
+        requestSocket.send(message);
+    }
+
+    private String receiveText() {
+        String reply = new String(requestSocket.recv());
+        while (reply.equals(TextProtocol.BUSY_REPLY)) {
+            // The text reply carries no delay, so wait as long as the proxy asks binary clients to
+            waitBeforeRetry(ZMQProxyWorker.RETRY_AFTER_MILLIS);
+            requestSocket.send(lastTextRequest);
+            reply = new String(requestSocket.recv());
+        }
+        return reply;
+    }
+
+    // Any other reply, such as "INDEX REPLY: ERROR", fails the request like an ERROR_REPLY does
+    private void receiveTextOk(String expectedReply) {
+        String reply = receiveText();
+        if (!reply.equals(expectedReply)) {
+            throw new IllegalStateException("Server error at " + address + ": " + reply);
+        }
+    }
+
+    private void sendBinary(byte messageType, byte[] body) {
+        lastRequestType = messageType;
+        lastRequestBody = body;
+        if (body == null) {
+            requestSocket.send(BinaryProtocol.header(messageType));
+        } else {
+            requestSocket.sendMore(BinaryProtocol.header(messageType));
+            requestSocket.send(body);
+        }
+    }
+
+    // Returns the body frame of the expected reply, or an empty body if the reply has none
+    private byte[] receiveBinary(byte expectedType) {
+        ZMsg reply = ZMsg.recvMsg(requestSocket);
+        byte type = BinaryProtocol.messageType(reply.pop().getData());
+        byte[] body = reply.isEmpty() ? new byte[0] : reply.pop().getData();
+        reply.destroy();
+
+        if (type == BinaryProtocol.BUSY_REPLY) {
+            BinaryProtocol.Decoder busyReply = new BinaryProtocol.Decoder(body);
+            busyReply.readVarLong(); // Batch ID, unused on the REQ socket
+            waitBeforeRetry(busyReply.readVarLong());
+            sendBinary(lastRequestType, lastRequestBody);
+            return receiveBinary(expectedType);
+        }
+
+        if (type == BinaryProtocol.ERROR_REPLY) {
+            throw new IllegalStateException("Server error at " + address + ": " + BinaryProtocol.decodeString(body));
+        }
+        if (type != expectedType) {
+            throw new IllegalStateException("Unexpected reply type " + type + ", expected " + expectedType);
+        }
+        return body;
+    }
+
+    private void waitBeforeRetry(long retryAfterMillis) {
+        busyReplies++;
+        try {
+            Thread.sleep(retryAfterMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry a request to " + address);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package csc435.app;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Request counts and latencies per request type, split into the stages a request goes through:
+// waiting in the proxy's queue, decoding, executing against the index and encoding the reply.
+// Recording only touches LongAdders and lock-free histograms, so workers never contend on it.
+// Latencies cover the whole uptime; request rates cover the time since the previous snapshot.
+public class ServerMetrics {
+    public enum RequestType { REGISTER, INDEX, INDEX_BATCH, DELETE, SEARCH, SNAPSHOT, QUIT, OTHER }
+
+    private static final String[] STAGES = { "queue", "decode", "execute", "encode" };
+
+    private static class TypeMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final ConcurrentLatencyHistogram total = new ConcurrentLatencyHistogram();
+        final ConcurrentLatencyHistogram[] stages = new ConcurrentLatencyHistogram[STAGES.length];
+        long countAtLastSnapshot;
+
+        TypeMetrics() {
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new ConcurrentLatencyHistogram();
+            }
+        }
+    }
+
+    private final TypeMetrics[] types = new TypeMetrics[RequestType.values().length];
+    private final long startNanos = System.nanoTime();
+    private long lastSnapshotNanos = startNanos;
+
+    public ServerMetrics() {
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new TypeMetrics();
+        }
+    }
+
+    public void record(RequestType type, long queueNanos, long decodeNanos, long executeNanos, long encodeNanos,
+            boolean failed) {
+        TypeMetrics metrics = types[type.ordinal()];
+        metrics.count.increment();
+        if (failed) {
+            metrics.errors.increment();
+        }
+        metrics.total.record(queueNanos + decodeNanos + executeNanos + encodeNanos);
+        metrics.stages[0].record(queueNanos);
+        metrics.stages[1].record(decodeNanos);
+        metrics.stages[2].record(executeNanos);
+        metrics.stages[3].record(encodeNanos);
+    }
+
+    public long getCount(RequestType type) {
+        return types[type.ordinal()].count.sum();
+    }
+
+    // JSON snapshot of the request metrics together with the index size, update lock waits,
+    // request queues and search cache. lanes and cache may be empty or null.
+    public synchronized String toJson(IndexStore store, List<ZMQProxyWorker.Lane> lanes, SearchCache cache) {
+        long now = System.nanoTime();
+        double interval = Math.max(1e-9, (now - lastSnapshotNanos) / 1e9);
+        lastSnapshotNanos = now;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append(String.format(Locale.ROOT, "  \"uptimeSeconds\": %.1f,%n  \"intervalSeconds\": %.1f,%n",
+                (now - startNanos) / 1e9, interval));
+
+        json.append("  \"requests\": {");
+        String separator = "\n";
+        for (RequestType type : RequestType.values()) {
+            TypeMetrics metrics = types[type.ordinal()];
+            long count = metrics.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            LatencyHistogram total = metrics.total.snapshot();
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"errors\": %d, \"qps\": %.1f,%n"
+                    + "      \"latencyMs\": {\"mean\": %.3f, \"p50\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f},%n"
+                    + "      \"stagesMs\": {",
+                    type.name().toLowerCase(Locale.ROOT), count, metrics.errors.sum(),
+                    (count - metrics.countAtLastSnapshot) / interval, total.getMean() / 1e6,
+                    millis(total, 50), millis(total, 99), millis(total, 99.9), total.getMax() / 1e6));
+            for (int i = 0; i < STAGES.length; i++) {
+                LatencyHistogram stage = metrics.stages[i].snapshot();
+                json.append(String.format(Locale.ROOT, "%s\"%s\": {\"mean\": %.3f, \"p99\": %.3f}",
+                        i == 0 ? "" : ", ", STAGES[i], stage.getMean() / 1e6, millis(stage, 99)));
+            }
+            json.append("}}");
+            metrics.countAtLastSnapshot = count;
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append(String.format(Locale.ROOT,
+                "  \"updateLock\": {\"acquisitions\": %d, \"contended\": %d, \"waitMs\": %.3f},%n",
+                store.getLockAcquisitions(), store.getLockContentions(), store.getLockWaitNanos() / 1e6));
+
+        IndexStore.Statistics index = store.getStatistics();
+        json.append(String.format(Locale.ROOT, "  \"index\": {\"documents\": %d, \"memoryTerms\": %d, \"memoryPostings\": %d,"
+                + " \"memoryBytes\": %d, \"segments\": %d, \"segmentTerms\": %d, \"segmentPostings\": %d, \"segmentBytes\": %d},%n",
+                index.documents, index.memoryTerms, index.memoryPostings, index.memoryBytes, index.segments,
+                index.segmentTerms, index.segmentPostings, index.segmentBytes));
+
+        json.append("  \"queues\": [");
+        for (int i = 0; i < lanes.size(); i++) {
+            ZMQProxyWorker.Lane lane = lanes.get(i);
+            json.append(String.format("%s%n    {\"lane\": \"%s\", \"workers\": %d, \"queued\": %d, \"peakQueued\": %d,"
+                    + " \"limit\": %s, \"accepted\": %d, \"rejected\": %d}", i == 0 ? "" : ",", lane.name.toLowerCase(Locale.ROOT),
+                    lane.workers, lane.getQueued(), lane.getPeakQueued(),
+                    lane.queueLimit < 0 ? "null" : String.valueOf(lane.queueLimit), lane.getAccepted(), lane.getRejected()));
+        }
+        json.append(lanes.isEmpty() ? "],\n" : "\n  ],\n");
+
+        if (cache == null) {
+            json.append("  \"cache\": null\n");
+        } else {
+            json.append(String.format("  \"cache\": {\"entries\": %d, \"hits\": %d, \"misses\": %d, \"invalidations\": %d,"
+                    + " \"evictions\": %d}%n", cache.size(), cache.getHits(), cache.getMisses(), cache.getInvalidations(),
+                    cache.getEvictions()));
+        }
+        json.append("}");
+        return json.toString();
+    }
+
+    private static double millis(LatencyHistogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+}
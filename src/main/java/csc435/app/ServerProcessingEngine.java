@@ -3,54 +3,234 @@ package csc435.app;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class ServerProcessingEngine {
+    // In-process PUB endpoint used to tell the proxy and workers to stop
+    public static final String CONTROL_ENDPOINT = "inproc://control";
+    public static final int DEFAULT_NOTIFY_PORT = 5556;
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    public static final int DEFAULT_INDEX_WORKERS = 2;
+    // Queue limit of a lane that admits every request; text clients predate the busy reply
+    public static final int NO_QUEUE_LIMIT = -1;
+
     private IndexStore store;
     private ZContext context;
     private ExecutorService workerPool;
-    private ZMQ.Socket notifySocket; // Socket for shutdown messages
+    private ZMQ.Socket controlSocket;
+    private Thread proxyThread;
+    private int notifyPort; // 0: index updates are not published
+    // Index updates are published on the notification port for follower servers
+    private ChangeStream changeStream;
+    private Thread publisherThread;
+    // Set on a follower: the primary it copies its index from
+    private String primaryAddress;
+    private int primaryNotifyPort;
+    private Thread followerThread;
+    private SearchCache searchCache;
+    // Above zero: requests run on virtual threads, at most this many at a time, instead of on
+    // the fixed pool of REP workers
+    private int maxVirtualThreadRequests;
+    // Worker mode: index updates get their own workers, and each lane its own queue limit,
+    // which turns requests away only when set
+    private int numIndexWorkers = DEFAULT_INDEX_WORKERS;
+    private int indexQueueLimit = NO_QUEUE_LIMIT;
+    private int searchQueueLimit = NO_QUEUE_LIMIT;
+    private ZMQProxyWorker.Lane searchLane;
+    private ZMQProxyWorker.Lane indexLane;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private int adminPort; // 0: no admin socket
+    private Thread adminThread;
 
     public ServerProcessingEngine(IndexStore store) {
         this.store = store;
         this.context = new ZContext();
+        this.searchCache = new SearchCache(store, DEFAULT_CACHE_SIZE);
+    }
+
+    // Number of search results lists kept; 0 disables the cache
+    public void setSearchCacheSize(int entries) {
+        this.searchCache = entries > 0 ? new SearchCache(store, entries) : null;
+    }
+
+    // Must be called before initialize; the worker thread count is then ignored
+    public void setVirtualThreadDispatch(int maxConcurrentRequests) {
+        this.maxVirtualThreadRequests = maxConcurrentRequests;
+    }
+
+    // Requests a lane holds beyond those its workers are running before clients are told to
+    // retry later. With no index workers, index updates share the search workers and limit.
+    public void setAdmission(int numIndexWorkers, int indexQueueLimit, int searchQueueLimit) {
+        this.numIndexWorkers = numIndexWorkers;
+        this.indexQueueLimit = indexQueueLimit;
+        this.searchQueueLimit = searchQueueLimit;
+    }
+
+    // Null in virtual thread mode; the index lane is also null when it shares the search lane
+    public ZMQProxyWorker.Lane getSearchLane() {
+        return searchLane;
+    }
+
+    public ZMQProxyWorker.Lane getIndexLane() {
+        return indexLane;
+    }
+
+    // Port on which any request is answered with getStats(); must be called before initialize
+    public void setAdminPort(int adminPort) {
+        this.adminPort = adminPort;
+    }
+
+    // JSON snapshot of the request metrics, index size, lock waits, queues and search cache
+    public String getStats() {
+        List<ZMQProxyWorker.Lane> lanes = new ArrayList<>();
+        if (searchLane != null) {
+            lanes.add(searchLane);
+        }
+        if (indexLane != null) {
+            lanes.add(indexLane);
+        }
+        return metrics.toJson(store, lanes, searchCache);
+    }
+
+    public SearchCache getSearchCache() {
+        return searchCache;
+    }
+
+    // Publishes index updates on this port for followers; without it updates are not encoded
+    // or queued for publishing at all. Servers sharing a host each need their own port.
+    public void setNotifyPort(int notifyPort) {
+        this.notifyPort = notifyPort;
+    }
+
+    // Makes this server a read-only follower of the primary at "<host>:<port>". It must be
+    // called before initialize, on a server with an in-memory index.
+    public void follow(String primaryAddress, int primaryNotifyPort) {
+        this.primaryAddress = primaryAddress;
+        this.primaryNotifyPort = primaryNotifyPort;
     }
 
     public void initialize(int serverPort, int numWorkerThreads) {
-        // Start the proxy on its own thread
-        Thread proxyThread = new Thread(new ZMQProxyWorker(context, serverPort));
-        proxyThread.start();
+        // Bind the control socket first so the proxy and workers can connect to it
+        controlSocket = context.createSocket(SocketType.PUB);
+        controlSocket.bind(CONTROL_ENDPOINT);
+
+        if (notifyPort > 0) {
+            // Bound here so that a port conflict fails the start; from now on only the publisher
+            // thread uses the socket. The high-water mark lets a busy follower lag a little
+            // before it misses changes and has to load a new snapshot.
+            ZMQ.Socket notifySocket = context.createSocket(SocketType.PUB);
+            notifySocket.setSndHWM(100_000);
+            notifySocket.bind("tcp://*:" + notifyPort);
+            changeStream = new ChangeStream();
+            store.setChangeStream(changeStream);
+            publisherThread = new Thread(() -> publishChanges(notifySocket), "change-publisher");
+            publisherThread.start();
+        }
+
+        if (maxVirtualThreadRequests > 0) {
+            RequestHandler handler = new RequestHandler(store, searchCache, primaryAddress != null, metrics);
+            proxyThread = new Thread(new VirtualThreadDispatcher(context, serverPort, handler, maxVirtualThreadRequests),
+                    "dispatcher");
+            proxyThread.start();
+        } else {
+            searchLane = new ZMQProxyWorker.Lane("Search", numWorkerThreads, searchQueueLimit);
+            indexLane = numIndexWorkers > 0 ? new ZMQProxyWorker.Lane("Index", numIndexWorkers, indexQueueLimit) : null;
+
+            // Start the proxy on its own thread
+            proxyThread = new Thread(new ZMQProxyWorker(context, serverPort, searchLane, indexLane));
+            proxyThread.start();
 
-        // Create a worker pool
-        workerPool = Executors.newCachedThreadPool();
+            // Create a worker pool
+            workerPool = Executors.newCachedThreadPool();
 
-        // CHANGED: Remove the infinite loop. Just submit one ServerWorker per thread.
-        for (int i = 0; i < numWorkerThreads; i++) {
-            workerPool.execute(new ServerWorker(store, context));
+            // CHANGED: Remove the infinite loop. Just submit one ServerWorker per thread.
+            for (int i = 0; i < numWorkerThreads; i++) {
+                workerPool.execute(new ServerWorker(store, context, searchCache, primaryAddress != null,
+                        ZMQProxyWorker.SEARCH_BACKEND, metrics));
+            }
+            for (int i = 0; i < numIndexWorkers; i++) {
+                workerPool.execute(new ServerWorker(store, context, searchCache, primaryAddress != null,
+                        ZMQProxyWorker.INDEX_BACKEND, metrics));
+            }
         }
 
-        // Create a PUB socket to send shutdown notifications, if desired
-        notifySocket = context.createSocket(SocketType.PUB);
-        notifySocket.bind("tcp://*:5556");
+        if (adminPort > 0) {
+            adminThread = new Thread(new AdminServer(context, adminPort, this::getStats), "admin");
+            adminThread.start();
+        }
+
+        if (primaryAddress != null) {
+            followerThread = new Thread(new ReplicaFollower(context, store, primaryAddress, primaryNotifyPort), "replica-follower");
+            followerThread.start();
+        }
 
         System.out.println("Server started on port " + serverPort + " with " 
-                           + numWorkerThreads + " worker threads.");
+                           + (maxVirtualThreadRequests > 0 ? "virtual thread dispatch"
+                                   : numWorkerThreads + " search and " + numIndexWorkers + " index worker threads")
+                           + (primaryAddress == null ? "." : ", following " + primaryAddress + "."));
+    }
+
+    // Each change is sent as the topic, the stream ID and sequence number, then the log record
+    private void publishChanges(ZMQ.Socket notifySocket) {
+        try {
+            while (true) {
+                for (ChangeStream.Change change : changeStream.take()) {
+                    if (change.record == null) {
+                        // Tell followers the primary is going away
+                        notifySocket.send(ReplicaFollower.SHUTDOWN_TOPIC);
+                        return;
+                    }
+                    notifySocket.sendMore(ReplicaFollower.CHANGE_TOPIC);
+                    notifySocket.sendMore(BinaryProtocol.encodeSnapshotInfo(changeStream.getStreamID(), change.sequence));
+                    notifySocket.send(change.record);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            notifySocket.close();
+        }
     }
 
     public void shutdown() {
         System.out.println("Shutting down server...");
 
-        // Optionally broadcast a shutdown message
-        notifySocket.send("SERVER_SHUTDOWN");
-        notifySocket.close();
-
-        // Shut down the worker pool
-        workerPool.shutdown();
+        // Wake the proxy, the workers and the follower blocked in poll and let them close their sockets
+        controlSocket.send(ZMQ.PROXY_TERMINATE);
+        try {
+            if (workerPool != null) {
+                workerPool.shutdown();
+                if (!workerPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    workerPool.shutdownNow();
+                }
+            }
+            proxyThread.join(10000);
+            if (followerThread != null) {
+                followerThread.join(5000);
+            }
+            if (adminThread != null) {
+                adminThread.join(5000);
+            }
+            // Publishes the changes still queued, then the shutdown notification
+            if (changeStream != null) {
+                changeStream.close();
+                publisherThread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        controlSocket.close();
 
         // Close the ZeroMQ context (forces all sockets to close)
         context.close();
 
+        // No worker is updating the index any more, so everything in memory can be flushed
+        store.close();
+
         System.out.println("Server fully shut down.");
     }
 }
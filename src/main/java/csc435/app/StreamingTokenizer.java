@@ -0,0 +1,224 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Byte-level tokenizer equivalent to splitting the decoded text on [^a-zA-Z0-9_-]+ and keeping
+// words longer than 3 characters. Token characters are all ASCII, so every other byte (including
+// any byte of a multi-byte UTF-8 sequence) is a separator and the text never has to be decoded.
+// Small files are read through one reusable buffer and large files are memory-mapped in windows,
+// so memory use does not depend on file size. Counts go into an open-addressing table keyed by
+// the raw term bytes; a String is only created per distinct term when the result is emitted.
+// Instances are reusable but not thread-safe.
+public class StreamingTokenizer {
+    private static final int MIN_TERM_LENGTH = 4;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_THRESHOLD = 1L << 20;
+    private static final long MAP_WINDOW_SIZE = 64L << 20;
+
+    private static final boolean[] TOKEN_BYTE = new boolean[256];
+    static {
+        for (int c = 'a'; c <= 'z'; c++) TOKEN_BYTE[c] = true;
+        for (int c = 'A'; c <= 'Z'; c++) TOKEN_BYTE[c] = true;
+        for (int c = '0'; c <= '9'; c++) TOKEN_BYTE[c] = true;
+        TOKEN_BYTE['_'] = true;
+        TOKEN_BYTE['-'] = true;
+    }
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    // Bytes of the token being scanned; tokens may straddle buffer or window boundaries
+    private byte[] token = new byte[64];
+    private int tokenLength;
+
+    // Open-addressing term table: slots hold entry index + 1, entries live in parallel arrays
+    private int[] slots = new int[1024];
+    private int[] termHashes = new int[512];
+    private int[] termOffsets = new int[512];
+    private int[] termLengths = new int[512];
+    private long[] termCounts = new long[512];
+    private byte[] termBytes = new byte[8192];
+    private int numTerms;
+    private int termBytesUsed;
+
+    private long bytesScanned;
+    // Checksum of the scanned bytes, so clients can tell whether a file's content changed
+    private final CRC32C contentChecksum = new CRC32C();
+
+    // Tokenizes the whole file and returns its word frequencies
+    public Map<String, Long> tokenize(Path file) throws IOException {
+        reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+                    long length = Math.min(MAP_WINDOW_SIZE, size - position);
+                    scan(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                }
+            } else {
+                readBuffer.clear();
+                while (channel.read(readBuffer) > 0) {
+                    readBuffer.flip();
+                    scan(readBuffer);
+                    readBuffer.clear();
+                }
+            }
+        }
+        endToken();
+        return toMap();
+    }
+
+    // Tokenizes in-memory bytes, e.g. for benchmarks
+    public Map<String, Long> tokenize(byte[] content) {
+        reset();
+        scan(ByteBuffer.wrap(content));
+        endToken();
+        return toMap();
+    }
+
+    // Bytes consumed by the last tokenize call
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    // CRC32C of the content scanned by the last tokenize call
+    public long getContentChecksum() {
+        return contentChecksum.getValue();
+    }
+
+    public int getDistinctTerms() {
+        return numTerms;
+    }
+
+    private void reset() {
+        // Drop tables grown by an unusually large file instead of clearing them for every small one
+        if (slots.length > 1 << 16) {
+            slots = new int[1024];
+        } else {
+            Arrays.fill(slots, 0);
+        }
+        numTerms = 0;
+        termBytesUsed = 0;
+        tokenLength = 0;
+        bytesScanned = 0;
+        contentChecksum.reset();
+    }
+
+    private void scan(ByteBuffer buffer) {
+        int remaining = buffer.remaining();
+        bytesScanned += remaining;
+        contentChecksum.update(buffer.duplicate());
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int start = buffer.arrayOffset() + buffer.position();
+            for (int i = start, end = start + remaining; i < end; i++) {
+                accept(array[i]);
+            }
+        } else {
+            for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+                accept(buffer.get(i));
+            }
+        }
+        buffer.position(buffer.limit());
+    }
+
+    private void accept(byte b) {
+        if (TOKEN_BYTE[b & 0xFF]) {
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, tokenLength * 2);
+            }
+            token[tokenLength++] = b;
+        } else if (tokenLength > 0) {
+            endToken();
+        }
+    }
+
+    private void endToken() {
+        if (tokenLength >= MIN_TERM_LENGTH) {
+            count(token, tokenLength);
+        }
+        tokenLength = 0;
+    }
+
+    private void count(byte[] bytes, int length) {
+        int hash = hash(bytes, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (entry < 0) {
+                insert(slot, hash, bytes, length);
+                return;
+            }
+            if (termHashes[entry] == hash && termLengths[entry] == length
+                    && Arrays.equals(termBytes, termOffsets[entry], termOffsets[entry] + length, bytes, 0, length)) {
+                termCounts[entry]++;
+                return;
+            }
+        }
+    }
+
+    private void insert(int slot, int hash, byte[] bytes, int length) {
+        if (numTerms == termHashes.length) {
+            int capacity = numTerms * 2;
+            termHashes = Arrays.copyOf(termHashes, capacity);
+            termOffsets = Arrays.copyOf(termOffsets, capacity);
+            termLengths = Arrays.copyOf(termLengths, capacity);
+            termCounts = Arrays.copyOf(termCounts, capacity);
+        }
+        if (termBytesUsed + length > termBytes.length) {
+            termBytes = Arrays.copyOf(termBytes, Math.max(termBytes.length * 2, termBytesUsed + length));
+        }
+
+        System.arraycopy(bytes, 0, termBytes, termBytesUsed, length);
+        termHashes[numTerms] = hash;
+        termOffsets[numTerms] = termBytesUsed;
+        termLengths[numTerms] = length;
+        termCounts[numTerms] = 1;
+        termBytesUsed += length;
+        slots[slot] = ++numTerms;
+
+        // Keep the load factor at or below one half
+        if (numTerms * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry = 0; entry < numTerms; entry++) {
+            int slot = termHashes[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    private Map<String, Long> toMap() {
+        Map<String, Long> wordFrequencies = new HashMap<>(numTerms * 4 / 3 + 1);
+        for (int entry = 0; entry < numTerms; entry++) {
+            String term = new String(termBytes, termOffsets[entry], termLengths[entry], StandardCharsets.US_ASCII);
+            wordFrequencies.put(term, termCounts[entry]);
+        }
+        return wordFrequencies;
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // Spread similar terms apart; linear probing clusters badly on the raw polynomial hash
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,92 @@
+package csc435.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Generates reproducible documents whose terms follow a Zipfian distribution,
+// so benchmarks can exercise the index without a dataset on disk.
+// With burstiness above 0 each word repeats one already in the document with that probability
+// (a Polya urn), so like real text a term that occurs once tends to occur again, and a few
+// documents hold a term far more often than the rest.
+public class SyntheticCorpus {
+    private final String[] vocabulary;
+    private final double[] cumulative;
+    private final int termsPerDocument;
+    private final long seed;
+    private double burstiness;
+
+    public SyntheticCorpus(int vocabularySize, int termsPerDocument, double exponent, long seed) {
+        this.vocabulary = new String[vocabularySize];
+        this.cumulative = new double[vocabularySize];
+        this.termsPerDocument = termsPerDocument;
+        this.seed = seed;
+
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            vocabulary[rank] = "term" + Integer.toString(rank, 36);
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public SyntheticCorpus(int vocabularySize, int termsPerDocument) {
+        this(vocabularySize, termsPerDocument, 1.0, 42L);
+    }
+
+    public SyntheticCorpus withBurstiness(double burstiness) {
+        this.burstiness = burstiness;
+        return this;
+    }
+
+    public int vocabularySize() {
+        return vocabulary.length;
+    }
+
+    // Term with the given popularity rank (0 is the most frequent)
+    public String term(int rank) {
+        return vocabulary[rank];
+    }
+
+    public String sampleTerm(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        return vocabulary[Math.min(rank, vocabulary.length - 1)];
+    }
+
+    // Word frequencies of the given document; the same number always yields the same document
+    public Map<String, Long> document(long documentNumber) {
+        Random random = new Random(seed * 31 + documentNumber);
+        Map<String, Long> wordFrequencies = new HashMap<>();
+        String[] words = new String[termsPerDocument];
+        for (int i = 0; i < termsPerDocument; i++) {
+            words[i] = i > 0 && burstiness > 0 && random.nextDouble() < burstiness
+                    ? words[random.nextInt(i)] : sampleTerm(random);
+            wordFrequencies.merge(words[i], 1L, Long::sum);
+        }
+        return wordFrequencies;
+    }
+
+    // Text of about the given size drawn from the same distribution, with punctuation and line
+    // breaks, for benchmarking the tokenizer
+    public byte[] text(long documentNumber, int size) {
+        Random random = new Random(seed * 31 + documentNumber);
+        StringBuilder text = new StringBuilder(size + 32);
+        while (text.length() < size) {
+            text.append(sampleTerm(random)).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public List<Map<String, Long>> documents(int count) {
+        List<Map<String, Long>> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(document(i));
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,209 @@
+package csc435.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Immutable sorted set of terms, front coded to stay far smaller than String keys: terms are
+// kept in unsigned UTF-8 byte order in blocks of BLOCK_SIZE, the first of each block in full and
+// every other one as the length of the prefix it shares with the previous term plus the rest,
+// all in one byte array. Seeking binary searches the blocks' first terms and decodes one block,
+// and a prefix's terms are then read in order, which is what wildcard expansion needs.
+//
+// Layout of one term: varint shared prefix length (0 for the first of a block), varint suffix
+// length, suffix bytes.
+public class TermDictionary {
+    static final int BLOCK_SIZE = 16;
+    public static final TermDictionary EMPTY = new Builder().build();
+
+    private final byte[] data;
+    private final int[] blockOffsets;
+    private final int size;
+
+    private TermDictionary(byte[] data, int[] blockOffsets, int size) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.size = size;
+    }
+
+    public static class Builder {
+        private byte[] data = new byte[1024];
+        private int length;
+        private int[] blockOffsets = new int[16];
+        private int size;
+        private byte[] previous;
+
+        // Terms must be added in strictly increasing unsigned byte order
+        public Builder add(byte[] term) {
+            if (previous != null && Arrays.compareUnsigned(previous, term) >= 0) {
+                throw new IllegalArgumentException("Terms must be added in sorted order");
+            }
+            int shared = 0;
+            if (size % BLOCK_SIZE == 0) {
+                if (size / BLOCK_SIZE == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+                }
+                blockOffsets[size / BLOCK_SIZE] = length;
+            } else {
+                int mismatch = Arrays.mismatch(previous, term);
+                shared = mismatch < 0 ? term.length : mismatch;
+            }
+            if (data.length - length < 10 + term.length - shared) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10 + term.length));
+            }
+            writeVarInt(shared);
+            writeVarInt(term.length - shared);
+            System.arraycopy(term, shared, data, length, term.length - shared);
+            length += term.length - shared;
+            previous = term;
+            size++;
+            return this;
+        }
+
+        public Builder add(String term) {
+            return add(term.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        public TermDictionary build() {
+            int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new TermDictionary(Arrays.copyOf(data, length), Arrays.copyOf(blockOffsets, blocks), size);
+        }
+    }
+
+    // The terms of strings sorted into a new dictionary
+    public static TermDictionary of(Collection<String> terms) {
+        return EMPTY.with(terms);
+    }
+
+    // A new dictionary holding this one's terms and the added ones, merged in one pass
+    public TermDictionary with(Collection<String> added) {
+        List<byte[]> sorted = new ArrayList<>(added.size());
+        for (String term : added) {
+            sorted.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        sorted.sort(Arrays::compareUnsigned);
+
+        Builder builder = new Builder();
+        Cursor cursor = new Cursor();
+        boolean more = cursor.next();
+        byte[] last = null;
+        for (byte[] term : sorted) {
+            while (more && Arrays.compareUnsigned(cursor.term, 0, cursor.length, term, 0, term.length) < 0) {
+                builder.add(cursor.copy());
+                more = cursor.next();
+            }
+            if (more && Arrays.equals(cursor.term, 0, cursor.length, term, 0, term.length)
+                    || last != null && Arrays.equals(last, term)) {
+                continue;
+            }
+            builder.add(term);
+            last = term;
+        }
+        for (; more; more = cursor.next()) {
+            builder.add(cursor.copy());
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Heap taken by the two arrays, headers included
+    public long sizeInBytes() {
+        return 16 + data.length + 16 + 4L * blockOffsets.length;
+    }
+
+    // Adds the terms matching the pattern to matches, at most limit of them, the first ones in
+    // sorted order. Only the terms starting with the pattern's prefix are read.
+    public void expand(TermPattern pattern, int limit, Collection<String> matches) {
+        Cursor cursor = new Cursor();
+        int found = 0;
+        for (boolean more = cursor.seekCeil(pattern.prefixBytes()); more && found < limit; more = cursor.next()) {
+            if (!pattern.hasPrefix(cursor.term, 0, cursor.length)) {
+                break;
+            }
+            String term = new String(cursor.term, 0, cursor.length, StandardCharsets.UTF_8);
+            if (pattern.matches(term)) {
+                matches.add(term);
+                found++;
+            }
+        }
+    }
+
+    // Reads the terms in order, decoding each from the previous one
+    private class Cursor {
+        byte[] term = new byte[32];
+        int length;
+        private int ordinal; // Of the next term to read
+        private int position; // Offset of the next term to read
+
+        boolean next() {
+            if (ordinal >= size) {
+                return false;
+            }
+            int shared = readVarInt();
+            int suffix = readVarInt();
+            if (term.length < shared + suffix) {
+                term = Arrays.copyOf(term, Math.max(term.length * 2, shared + suffix));
+            }
+            System.arraycopy(data, position, term, shared, suffix);
+            position += suffix;
+            length = shared + suffix;
+            ordinal++;
+            return true;
+        }
+
+        // Moves to the first term >= key; false if there is none
+        boolean seekCeil(byte[] key) {
+            // Last block whose first term is <= key; the answer is in it or starts the next one
+            int low = 0;
+            int high = blockOffsets.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (compareFirstTerm(middle, key) <= 0) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            ordinal = low * BLOCK_SIZE;
+            position = blockOffsets.length == 0 ? 0 : blockOffsets[low];
+            while (next()) {
+                if (Arrays.compareUnsigned(term, 0, length, key, 0, key.length) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        byte[] copy() {
+            return Arrays.copyOf(term, length);
+        }
+
+        private int compareFirstTerm(int block, byte[] key) {
+            position = blockOffsets[block];
+            readVarInt(); // Always 0
+            int termLength = readVarInt();
+            return Arrays.compareUnsigned(data, position, position + termLength, key, 0, key.length);
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
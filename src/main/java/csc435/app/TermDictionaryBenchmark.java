@@ -0,0 +1,140 @@
+package csc435.app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Heap taken by the front-coded TermDictionary against the String-keyed map of the in-memory
+// index, and wildcard expansion latency over millions of terms: the dictionary's prefix scan
+// against scanning every key of the map, which is what expansion costs without a sorted
+// dictionary. Each pattern class is sampled from random terms of a synthetic vocabulary.
+public class TermDictionaryBenchmark {
+    private static final String[] CONSONANTS = "b c d f g h k l m n p r s t v z st tr pl".split(" ");
+    private static final String[] VOWELS = "a e i o u ai ou".split(" ");
+    private static final String[] SUFFIXES = { "", "", "", "s", "ed", "ing", "er", "ion", "able" };
+
+    public static void main(String[] args) {
+        int numTerms = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        Random random = new Random(42);
+        Set<String> vocabulary = new HashSet<>();
+        while (vocabulary.size() < numTerms) {
+            vocabulary.add(randomTerm(random));
+        }
+        List<String> terms = new ArrayList<>(vocabulary);
+        vocabulary = null;
+
+        // Fresh Strings, as the index holds its own copies of the keys
+        long baseline = usedHeap();
+        Map<String, Object> map = new ConcurrentHashMap<>();
+        Object value = new Object();
+        for (String term : terms) {
+            map.put(new String(term), value);
+        }
+        long mapBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        long buildStart = System.nanoTime();
+        TermDictionary dictionary = TermDictionary.of(terms);
+        double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+        long dictionaryBytes = usedHeap() - baseline;
+        Reference.reachabilityFence(dictionary);
+
+        System.out.printf("%,d terms: String-keyed map %,.1f MB (%.1f bytes/term), dictionary %,.1f MB"
+                + " (%.1f bytes/term, %,d bytes of arrays), built in %.0f ms%n", numTerms, mapBytes / 1048576.0,
+                (double) mapBytes / numTerms, dictionaryBytes / 1048576.0, (double) dictionaryBytes / numTerms,
+                dictionary.sizeInBytes(), buildMillis);
+
+        String[] classes = { "2-char prefix*", "4-char prefix*", "6-char prefix*", "prefix?rest", "prefix*suffix",
+                "*suffix" };
+        System.out.println("pattern,example,matches,dictionary us,map scan us");
+        for (int patternClass = 0; patternClass < classes.length; patternClass++) {
+            List<TermPattern> patterns = new ArrayList<>();
+            for (int i = 0; i < samples; i++) {
+                patterns.add(new TermPattern(samplePattern(patternClass, terms.get(random.nextInt(terms.size())))));
+            }
+            // Warm up both before timing either
+            run(patterns, dictionary, map);
+
+            long matches = 0;
+            long start = System.nanoTime();
+            for (TermPattern pattern : patterns) {
+                List<String> found = new ArrayList<>();
+                dictionary.expand(pattern, SearchQuery.MAX_EXPANSIONS, found);
+                matches += found.size();
+            }
+            double dictionaryMicros = (System.nanoTime() - start) / 1e3 / patterns.size();
+            start = System.nanoTime();
+            for (TermPattern pattern : patterns) {
+                scanMap(pattern, map);
+            }
+            double mapMicros = (System.nanoTime() - start) / 1e3 / patterns.size();
+            System.out.printf("%s,%s,%.1f,%.1f,%.1f%n", classes[patternClass], patterns.get(0),
+                    (double) matches / patterns.size(), dictionaryMicros, mapMicros);
+        }
+    }
+
+    private static void run(List<TermPattern> patterns, TermDictionary dictionary, Map<String, Object> map) {
+        for (TermPattern pattern : patterns) {
+            dictionary.expand(pattern, SearchQuery.MAX_EXPANSIONS, new ArrayList<>());
+            scanMap(pattern, map);
+        }
+    }
+
+    // Without a sorted dictionary every key is tested; the first MAX_EXPANSIONS in sorted order
+    // are kept, like the dictionary's
+    private static int scanMap(TermPattern pattern, Map<String, Object> map) {
+        TreeSet<String> matches = new TreeSet<>();
+        for (String term : map.keySet()) {
+            if (pattern.matches(term)) {
+                matches.add(term);
+                if (matches.size() > SearchQuery.MAX_EXPANSIONS) {
+                    matches.pollLast();
+                }
+            }
+        }
+        return matches.size();
+    }
+
+    private static String samplePattern(int patternClass, String term) {
+        int length = term.length();
+        switch (patternClass) {
+            case 0:
+                return term.substring(0, Math.min(2, length)) + "*";
+            case 1:
+                return term.substring(0, Math.min(4, length)) + "*";
+            case 2:
+                return term.substring(0, Math.min(6, length)) + "*";
+            case 3:
+                return length < 4 ? term + "?" : term.substring(0, 3) + "?" + term.substring(4);
+            case 4:
+                return term.substring(0, Math.min(3, length)) + "*" + term.substring(Math.max(0, length - 2));
+            default:
+                return "*" + term.substring(Math.max(0, length - 5));
+        }
+    }
+
+    // Two to five syllables and a common suffix, so that terms share prefixes as words do
+    private static String randomTerm(Random random) {
+        StringBuilder term = new StringBuilder();
+        int syllables = 2 + random.nextInt(4);
+        for (int i = 0; i < syllables; i++) {
+            term.append(CONSONANTS[random.nextInt(CONSONANTS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+        }
+        return term.append(SUFFIXES[random.nextInt(SUFFIXES.length)]).toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,85 @@
+package csc435.app;
+
+import java.nio.charset.StandardCharsets;
+
+// A search term with wildcards: * matches any run of characters, including none, and ? matches
+// exactly one. The literal text before the first wildcard is the pattern's prefix; sorted term
+// dictionaries only scan the terms starting with it, so "config*" reads a narrow range while
+// "*config" reads every term. Indexed terms never contain * or ?, since the tokenizer splits on them.
+public class TermPattern {
+    private final String pattern;
+    private final String prefix;
+    private final byte[] prefixBytes;
+
+    public TermPattern(String pattern) {
+        this.pattern = pattern;
+        int literal = 0;
+        while (literal < pattern.length() && !isWildcard(pattern.charAt(literal))) {
+            literal++;
+        }
+        this.prefix = pattern.substring(0, literal);
+        this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static boolean isPattern(String term) {
+        return term.indexOf('*') >= 0 || term.indexOf('?') >= 0;
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == '*' || c == '?';
+    }
+
+    // Text every matching term starts with
+    public String prefix() {
+        return prefix;
+    }
+
+    public byte[] prefixBytes() {
+        return prefixBytes;
+    }
+
+    // Whether the term's first length bytes at offset start with the prefix
+    public boolean hasPrefix(byte[] term, int offset, int length) {
+        if (length < prefixBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixBytes.length; i++) {
+            if (term[offset + i] != prefixBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Greedy glob matching: on a mismatch, the last * takes one more character and the rest of
+    // the pattern is retried from there, which is linear for patterns with a single *
+    public boolean matches(String term) {
+        int p = 0;
+        int t = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (t < term.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
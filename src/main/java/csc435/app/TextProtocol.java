@@ -0,0 +1,119 @@
+package csc435.app;
+
+import java.util.*;
+
+// Original pipe/colon/comma text messages, kept for compatibility with older clients.
+// Paths and terms containing '|', ':' or ',' cannot be represented in this format.
+public class TextProtocol {
+    // Sent instead of the reply when the server's queue for the request is full
+    public static final String BUSY_REPLY = "BUSY: RETRY LATER";
+
+    // Format: "INDEX REQUEST|<clientID>|<docPath>|<word1:freq1,word2:freq2,...>"
+    public static String encodeIndexRequest(long clientID, String documentPath, Map<String, Long> wordFrequencies) {
+        StringBuilder message = new StringBuilder("INDEX REQUEST|");
+        message.append(clientID).append("|")
+               .append(documentPath).append("|");
+        for (Map.Entry<String, Long> entry : wordFrequencies.entrySet()) {
+            message.append(entry.getKey()).append(":").append(entry.getValue()).append(",");
+        }
+        if (message.charAt(message.length() - 1) == ',') {
+            message.deleteCharAt(message.length() - 1);
+        }
+        return message.toString();
+    }
+
+    // Returns null if the message is malformed
+    public static IndexRequest decodeIndexRequest(String message) {
+        String[] parts = message.split("\\|");
+        if (parts.length < 4) {
+            return null;
+        }
+
+        // parts[1] = client ID, parts[2] = docPath, parts[3] = frequencies
+        try {
+            Map<String, Long> wordFrequencies = new HashMap<>();
+            String[] words = parts[3].split(",");
+            for (String word : words) {
+                String[] keyValue = word.split(":");
+                if (keyValue.length == 2) {
+                    wordFrequencies.put(keyValue[0], Long.parseLong(keyValue[1]));
+                }
+            }
+            return new IndexRequest(Long.parseLong(parts[1]), parts[2], wordFrequencies);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Format: "DELETE REQUEST|<docPath>", answered with "DELETE REPLY: OK"
+    public static String encodeDeleteRequest(String documentPath) {
+        return "DELETE REQUEST|" + documentPath;
+    }
+
+    // Returns null if the message is malformed
+    public static String decodeDeleteRequest(String message) {
+        String[] parts = message.split("\\|", 2);
+        return parts.length < 2 || parts[1].isEmpty() ? null : parts[1];
+    }
+
+    // Format: "SEARCH REQUEST|term1,term2,...|AND|<maxResults>"; requests without an operator
+    // are OR queries and requests without a result count return 10 results
+    public static String encodeSearchRequest(SearchQuery query) {
+        return "SEARCH REQUEST|" + String.join(",", query.terms) + "|" + query.operator + "|" + query.maxResults;
+    }
+
+    public static SearchQuery decodeSearchRequest(String message) {
+        String[] split = message.split("\\|");
+        if (split.length < 2) {
+            return new SearchQuery(Collections.emptyList(), SearchQuery.Operator.OR);
+        }
+        SearchQuery.Operator operator = SearchQuery.Operator.OR;
+        if (split.length > 2 && split[2].equals("AND")) {
+            operator = SearchQuery.Operator.AND;
+        }
+        int maxResults = SearchQuery.DEFAULT_MAX_RESULTS;
+        if (split.length > 3) {
+            try {
+                maxResults = Integer.parseInt(split[3]);
+            } catch (NumberFormatException e) {
+                // A count that does not parse gets the default, like a missing one
+            }
+        }
+        return new SearchQuery(Arrays.asList(split[1].split(",")), operator, maxResults);
+    }
+
+    // Format: "SEARCH REPLY|ownerID:docPath:frequency|..."
+    public static String encodeSearchReply(List<ClientProcessingEngine.DocPathFreqPair> results) {
+        StringBuilder response = new StringBuilder("SEARCH REPLY|");
+        for (ClientProcessingEngine.DocPathFreqPair result : results) {
+            response.append(result.docOwner)
+                    .append(":")
+                    .append(result.documentPath)
+                    .append(":")
+                    .append(result.wordFrequency)
+                    .append("|");
+        }
+        return response.toString();
+    }
+
+    public static ArrayList<ClientProcessingEngine.DocPathFreqPair> decodeSearchReply(String response) {
+        ArrayList<ClientProcessingEngine.DocPathFreqPair> results = new ArrayList<>();
+        String[] parts = response.split("\\|");
+
+        // parts[0] is "SEARCH REPLY"
+        // Each subsequent part is "ownerID:docPath:freq"
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].isEmpty()) {
+                continue;
+            }
+            String[] docData = parts[i].split(":");
+            if (docData.length >= 3) {
+                long docOwner = Long.parseLong(docData[0]);
+                String docPath = docData[1];
+                long freq = Long.parseLong(docData[2]);
+                results.add(new ClientProcessingEngine.DocPathFreqPair(docPath, freq, docOwner));
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,113 @@
+package csc435.app;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Compares the regex tokenizer the client used to run with StreamingTokenizer and reports bytes/sec.
+// Without a path argument it generates a temporary Zipfian text file of the requested size.
+public class TokenizerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Path generated = null;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            collectFiles(new File(args[0]), files);
+        } else {
+            long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+            generated = generateFile(megabytes << 20);
+            files.add(generated);
+        }
+
+        try {
+            long totalBytes = 0;
+            for (Path file : files) {
+                totalBytes += Files.size(file);
+            }
+            System.out.printf("Corpus: %d files, %,d bytes%n", files.size(), totalBytes);
+
+            StreamingTokenizer tokenizer = new StreamingTokenizer();
+            for (int round = 0; round < 2; round++) {
+                boolean report = round == 1; // First round warms up the JIT and the page cache
+
+                long start = System.nanoTime();
+                long terms = 0;
+                for (Path file : files) {
+                    terms += tokenizer.tokenize(file).size();
+                }
+                print(report, "streaming", totalBytes, terms, start);
+
+                // The old path needs the whole file as a String, so skip files that cannot fit
+                if (totalBytes < Runtime.getRuntime().maxMemory() / 8) {
+                    start = System.nanoTime();
+                    terms = 0;
+                    for (Path file : files) {
+                        terms += regexTokenize(new String(Files.readAllBytes(file))).size();
+                    }
+                    print(report, "regex split", totalBytes, terms, start);
+                } else if (report) {
+                    System.out.println("regex split  skipped: corpus does not fit comfortably in the heap");
+                }
+            }
+        } finally {
+            if (generated != null) {
+                Files.deleteIfExists(generated);
+            }
+        }
+    }
+
+    private static Map<String, Long> regexTokenize(String content) {
+        Map<String, Long> wordFrequencies = new HashMap<>();
+        for (String word : content.split("[^a-zA-Z0-9_-]+")) {
+            if (word.length() > 3) {
+                wordFrequencies.put(word, wordFrequencies.getOrDefault(word, 0L) + 1);
+            }
+        }
+        return wordFrequencies;
+    }
+
+    private static void print(boolean report, String label, long bytes, long terms, long startNanos) {
+        if (report) {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.printf("%-12s %8.1f MB/s  (%d distinct terms per file summed)%n",
+                    label, bytes / seconds / (1 << 20), terms);
+        }
+    }
+
+    private static Path generateFile(long size) throws IOException {
+        Path file = Files.createTempFile("tokenizer-benchmark", ".txt");
+        SyntheticCorpus corpus = new SyntheticCorpus(200000, 1);
+        Random random = new Random(7);
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            while (written < size) {
+                String term = corpus.sampleTerm(random);
+                writer.write(term);
+                writer.write(random.nextInt(12) == 0 ? ".\n" : " ");
+                written += term.length() + 1;
+            }
+        }
+        return file;
+    }
+
+    private static void collectFiles(File folder, List<Path> files) {
+        File[] entries = folder.isDirectory() ? folder.listFiles() : new File[] { folder };
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.isDirectory()) {
+                collectFiles(entry, files);
+            } else if (entry.isFile()) {
+                files.add(entry.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package csc435.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the K best (score, document) pairs seen so far in a bounded binary min-heap stored in
+// primitive arrays, so selecting the top results costs O(n log K) with no per-document objects.
+// Higher scores rank first; equal scores rank the lower document number first.
+public class TopKCollector {
+    private final long[] scores;
+    private final long[] documentNumbers;
+    private int size;
+
+    public TopKCollector(int k) {
+        this.scores = new long[Math.max(1, k)];
+        this.documentNumbers = new long[Math.max(1, k)];
+    }
+
+    public void collect(long documentNumber, long score) {
+        if (size < scores.length) {
+            scores[size] = score;
+            documentNumbers[size] = documentNumber;
+            siftUp(size++);
+        } else if (ranksAbove(score, documentNumber, scores[0], documentNumbers[0])) {
+            scores[0] = score;
+            documentNumbers[0] = documentNumber;
+            siftDown(0);
+        }
+    }
+
+    public boolean isFull() {
+        return size == scores.length;
+    }
+
+    // Score a new document must beat to enter the results, or Long.MIN_VALUE while not full
+    public long threshold() {
+        return isFull() ? scores[0] : Long.MIN_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Drains the heap into a list ordered from best to worst
+    public List<QueryEvaluator.ScoredDocument> results() {
+        QueryEvaluator.ScoredDocument[] ordered = new QueryEvaluator.ScoredDocument[size];
+        while (size > 0) {
+            ordered[size - 1] = new QueryEvaluator.ScoredDocument(documentNumbers[0], scores[0]);
+            size--;
+            scores[0] = scores[size];
+            documentNumbers[0] = documentNumbers[size];
+            siftDown(0);
+        }
+        return new ArrayList<>(List.of(ordered));
+    }
+
+    private static boolean ranksAbove(long score, long documentNumber, long otherScore, long otherDocumentNumber) {
+        return score > otherScore || (score == otherScore && documentNumber < otherDocumentNumber);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(scores[parent], documentNumbers[parent], scores[index], documentNumbers[index])) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksAbove(scores[worst], documentNumbers[worst], scores[left], documentNumbers[left])) {
+                worst = left;
+            }
+            if (right < size && ranksAbove(scores[worst], documentNumbers[worst], scores[right], documentNumbers[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        long documentNumber = documentNumbers[a];
+        documentNumbers[a] = documentNumbers[b];
+        documentNumbers[b] = documentNumber;
+    }
+}
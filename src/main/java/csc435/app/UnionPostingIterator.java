@@ -0,0 +1,159 @@
+package csc435.app;
+
+import java.util.List;
+
+// Presents the postings of many terms, such as all the terms a wildcard term expands to, as a
+// single list whose frequencies are summed per document. MergingPostingIterator scans every
+// source at each step, which suits the few sources of one term; here the sources are kept in a
+// heap ordered by their current document, so a step costs O(log sources) and an expansion into
+// hundreds of terms across several segments is still merged in one pass.
+public class UnionPostingIterator implements PostingIterator {
+    private final PostingIterator[] sources;
+    private final int[] heap; // Source indexes; the root is on the smallest document
+    private int heapSize;
+    private final long cost;
+    private int maxFrequency = -1; // Summed when first asked for
+    private int documentNumber = -1;
+    private int frequency;
+
+    private UnionPostingIterator(List<PostingIterator> sources) {
+        this.sources = sources.toArray(new PostingIterator[0]);
+        this.heap = new int[this.sources.length];
+        long costSum = 0;
+        for (int i = 0; i < this.sources.length; i++) {
+            PostingIterator source = this.sources[i];
+            costSum += source.cost();
+            if (source.next() != NO_MORE_DOCUMENTS) {
+                heap[heapSize] = i;
+                siftUp(heapSize++);
+            }
+        }
+        this.cost = costSum;
+    }
+
+    // Returns the only source itself when there is nothing to merge
+    public static PostingIterator of(List<PostingIterator> sources) {
+        if (sources.isEmpty()) {
+            return PostingIterator.EMPTY;
+        }
+        return sources.size() == 1 ? sources.get(0) : new UnionPostingIterator(sources);
+    }
+
+    @Override
+    public int documentNumber() {
+        return documentNumber;
+    }
+
+    @Override
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public int next() {
+        if (documentNumber == NO_MORE_DOCUMENTS) {
+            return documentNumber;
+        }
+        while (heapSize > 0 && top().documentNumber() <= documentNumber) {
+            top().next();
+            topChanged();
+        }
+        return collect();
+    }
+
+    @Override
+    public int advance(int target) {
+        while (heapSize > 0 && top().documentNumber() < target) {
+            top().advance(target);
+            topChanged();
+        }
+        return collect();
+    }
+
+    @Override
+    public long cost() {
+        return cost;
+    }
+
+    // Sum of the sources' bounds; block bounds are not tracked across this many sources
+    @Override
+    public int maxFrequency() {
+        if (maxFrequency < 0) {
+            long sum = 0;
+            for (PostingIterator source : sources) {
+                sum += source.maxFrequency();
+            }
+            maxFrequency = (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+        return maxFrequency;
+    }
+
+    private PostingIterator top() {
+        return sources[heap[0]];
+    }
+
+    // Restores the heap after the root source moved forward, dropping it once exhausted
+    private void topChanged() {
+        if (top().documentNumber() == NO_MORE_DOCUMENTS) {
+            heap[0] = heap[--heapSize];
+        }
+        if (heapSize > 0) {
+            siftDown(0);
+        }
+    }
+
+    // Positions on the root's document and sums the frequencies of every source on it
+    private int collect() {
+        if (heapSize == 0) {
+            frequency = 0;
+            return documentNumber = NO_MORE_DOCUMENTS;
+        }
+        documentNumber = top().documentNumber();
+        frequency = (int) Math.min(sumFrequencies(0, documentNumber), Integer.MAX_VALUE);
+        return documentNumber;
+    }
+
+    // Sources on the document form a subtree at the root, since no child is below its parent
+    private long sumFrequencies(int node, int document) {
+        if (node >= heapSize || sources[heap[node]].documentNumber() != document) {
+            return 0;
+        }
+        return sources[heap[node]].frequency() + sumFrequencies(2 * node + 1, document)
+                + sumFrequencies(2 * node + 2, document);
+    }
+
+    private void siftUp(int node) {
+        int source = heap[node];
+        int document = sources[source].documentNumber();
+        while (node > 0) {
+            int parent = (node - 1) >>> 1;
+            if (sources[heap[parent]].documentNumber() <= document) {
+                break;
+            }
+            heap[node] = heap[parent];
+            node = parent;
+        }
+        heap[node] = source;
+    }
+
+    private void siftDown(int node) {
+        int source = heap[node];
+        int document = sources[source].documentNumber();
+        while (true) {
+            int child = 2 * node + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && sources[heap[child + 1]].documentNumber() < sources[heap[child]].documentNumber()) {
+                child++;
+            }
+            if (sources[heap[child]].documentNumber() >= document) {
+                break;
+            }
+            heap[node] = heap[child];
+            node = child;
+        }
+        heap[node] = source;
+    }
+}
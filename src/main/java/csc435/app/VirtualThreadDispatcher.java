@@ -0,0 +1,158 @@
+package csc435.app;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+// Alternative to the proxy and its fixed pool of REP workers: one thread owns the client-facing
+// ROUTER socket and runs every request on its own virtual thread, so a slow search or a large
+// index batch only holds up its own client. A semaphore bounds how many requests run at once;
+// while it is exhausted the dispatcher stops reading requests and they wait in ZMQ's queues.
+// ZMQ sockets cannot be shared between threads, so request threads send replies through a pool
+// of PUSH sockets to a PULL socket that the dispatcher forwards to the ROUTER.
+public class VirtualThreadDispatcher implements Runnable {
+    private static final String REPLY_ENDPOINT = "inproc://dispatcher-replies";
+
+    private final ZContext context;
+    private final int serverPort;
+    private final RequestHandler handler;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<ZMQ.Socket> replySockets = new ConcurrentLinkedQueue<>();
+
+    public VirtualThreadDispatcher(ZContext context, int serverPort, RequestHandler handler, int maxConcurrentRequests) {
+        this.context = context;
+        this.serverPort = serverPort;
+        this.handler = handler;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+    }
+
+    @Override
+    public void run() {
+        ZMQ.Socket router = context.createSocket(SocketType.ROUTER);
+        ZMQ.Socket replies = context.createSocket(SocketType.PULL);
+        ZMQ.Socket control = context.createSocket(SocketType.SUB);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            router.bind("tcp://*:" + serverPort);
+            replies.bind(REPLY_ENDPOINT);
+            for (int i = 0; i < maxConcurrentRequests; i++) {
+                replySockets.add(createReplySocket());
+            }
+            control.connect(ServerProcessingEngine.CONTROL_ENDPOINT);
+            control.subscribe(ZMQ.SUBSCRIPTION_ALL);
+            System.out.println("Dispatcher running on port " + serverPort + " with up to "
+                    + maxConcurrentRequests + " concurrent requests on virtual threads");
+
+            // The saturated poller leaves out the ROUTER, so no request is read without a permit
+            ZMQ.Poller accepting = context.createPoller(3);
+            int acceptingRequests = accepting.register(router, ZMQ.Poller.POLLIN);
+            int acceptingReplies = accepting.register(replies, ZMQ.Poller.POLLIN);
+            int acceptingControl = accepting.register(control, ZMQ.Poller.POLLIN);
+            ZMQ.Poller saturated = context.createPoller(2);
+            int saturatedReplies = saturated.register(replies, ZMQ.Poller.POLLIN);
+            int saturatedControl = saturated.register(control, ZMQ.Poller.POLLIN);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean canAccept = permits.availablePermits() > 0;
+                ZMQ.Poller poller = canAccept ? accepting : saturated;
+                if (poller.poll(-1) < 0) {
+                    break;
+                }
+                if (poller.pollin(canAccept ? acceptingControl : saturatedControl)) {
+                    break;
+                }
+                // Forward finished replies first; each one has already given back its permit
+                if (poller.pollin(canAccept ? acceptingReplies : saturatedReplies)) {
+                    ZMsg reply;
+                    while ((reply = ZMsg.recvMsg(replies, ZMQ.DONTWAIT)) != null) {
+                        reply.send(router);
+                    }
+                }
+                if (canAccept && poller.pollin(acceptingRequests)) {
+                    while (permits.tryAcquire()) {
+                        ZMsg request = ZMsg.recvMsg(router, ZMQ.DONTWAIT);
+                        if (request == null) {
+                            permits.release();
+                            break;
+                        }
+                        dispatch(request, executor);
+                    }
+                }
+            }
+            accepting.close();
+            saturated.close();
+        } catch (org.zeromq.ZMQException e) {
+            // Thrown if the context is closed while waiting
+        } finally {
+            // Let running requests finish; their replies are dropped with the sockets
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ZMQ.Socket push;
+            while ((push = replySockets.poll()) != null) {
+                push.close();
+            }
+            control.close();
+            replies.close();
+            router.close();
+        }
+    }
+
+    // The routing envelope (client identity and, for REQ clients, the empty delimiter) goes back
+    // in front of the reply, so the ROUTER delivers it to the client that asked
+    private void dispatch(ZMsg request, ExecutorService executor) {
+        ZMsg envelope = new ZMsg();
+        while (!request.isEmpty()) {
+            ZFrame frame = request.pop();
+            envelope.add(frame);
+            if (frame.size() == 0) {
+                break;
+            }
+        }
+        long dispatched = System.nanoTime();
+        executor.execute(() -> {
+            ZMsg reply;
+            try {
+                reply = handler.handle(request, System.nanoTime() - dispatched);
+            } catch (RuntimeException e) {
+                System.err.println("Request failed: " + e);
+                reply = new ZMsg();
+                reply.add(BinaryProtocol.header(BinaryProtocol.ERROR_REPLY));
+                reply.add(BinaryProtocol.encodeString(String.valueOf(e.getMessage())));
+            } finally {
+                request.destroy();
+            }
+            for (ZFrame frame = envelope.pollLast(); frame != null; frame = envelope.pollLast()) {
+                reply.push(frame);
+            }
+            // The permit goes back before the reply is sent, so that the dispatcher sees it when the
+            // reply wakes it. Finished requests that have not yet returned their socket no longer
+            // hold a permit, so the pool can run dry; another socket is then opened and kept.
+            ZMQ.Socket push = replySockets.poll();
+            if (push == null) {
+                push = createReplySocket();
+            }
+            permits.release();
+            reply.send(push);
+            replySockets.add(push);
+        });
+    }
+
+    private ZMQ.Socket createReplySocket() {
+        ZMQ.Socket push = context.createSocket(SocketType.PUSH);
+        push.connect(REPLY_ENDPOINT);
+        return push;
+    }
+}
@@ -0,0 +1,238 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Append-only log of index updates, written before an update is applied to the in-memory index
+// so that acknowledged updates survive a crash. Each record is an int payload length, an int
+// CRC32C of the payload, then a record kind byte and the batch of indexed documents or deleted
+// paths in the binary protocol's varint encoding. A torn record at the end of the file (from a
+// crash mid-write) fails its checksum and is dropped.
+// The same record payloads are published to follower servers on the change stream.
+public class WriteAheadLog {
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INDEX_RECORD = 1;
+    private static final int DELETE_RECORD = 2;
+
+    public enum Durability {
+        NONE,        // Written to the OS page cache only; survives a JVM crash but not power loss
+        BATCHED,     // Concurrent writers wait for a shared fsync (group commit)
+        PER_REQUEST; // Every batch pays for its own fsync
+
+        public static Durability parse(String value) {
+            switch (value.toLowerCase()) {
+                case "none":
+                    return NONE;
+                case "batched":
+                    return BATCHED;
+                case "request":
+                case "per-request":
+                    return PER_REQUEST;
+                default:
+                    throw new IllegalArgumentException("Unknown durability level: " + value);
+            }
+        }
+    }
+
+    public interface RecordConsumer {
+        void index(List<IndexRequest> documents);
+
+        void delete(List<String> documentPaths);
+    }
+
+    private final Path file;
+    private final Durability durability;
+    private final FileChannel channel;
+    private final CRC32C checksum = new CRC32C();
+    private long writtenPosition;
+
+    // Group commit state: one thread at a time forces the file, covering every record written
+    // before it started; threads queued behind it usually find their record already synced
+    private final Object syncLock = new Object();
+    private volatile long syncedPosition;
+    private volatile long syncCount;
+
+    public WriteAheadLog(Path file, Durability durability) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.writtenPosition = channel.size();
+        this.syncedPosition = writtenPosition;
+        channel.position(writtenPosition);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public static byte[] encodeDeletes(List<String> documentPaths) {
+        BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder(64 * documentPaths.size());
+        encoder.writeByte(DELETE_RECORD);
+        encoder.writeVarLong(documentPaths.size());
+        for (String documentPath : documentPaths) {
+            encoder.writeString(documentPath);
+        }
+        return encoder.toByteArray();
+    }
+
+    // Appends a payload from encodeBatch or encodeDeletes and returns the log position to pass to sync
+    public synchronized long append(byte[] payload) throws IOException {
+        checksum.reset();
+        checksum.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        writtenPosition += RECORD_HEADER_SIZE + payload.length;
+
+        if (durability == Durability.PER_REQUEST) {
+            channel.force(false);
+            syncedPosition = writtenPosition;
+            syncCount++;
+        }
+        return writtenPosition;
+    }
+
+    // Returns once everything up to position is on disk, as far as the durability level requires
+    public void sync(long position) throws IOException {
+        if (durability != Durability.BATCHED || syncedPosition >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedPosition >= position) {
+                return; // The previous fsync already covered this record
+            }
+            long target;
+            synchronized (this) {
+                target = writtenPosition;
+            }
+            channel.force(false);
+            syncedPosition = target;
+            syncCount++;
+        }
+    }
+
+    // Forces any remaining records to disk; pending syncs return immediately afterwards
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                if (durability != Durability.NONE) {
+                    channel.force(false);
+                }
+                syncedPosition = writtenPosition;
+                channel.close();
+            }
+        }
+    }
+
+    // Feeds every intact record to the consumer, in order, and cuts off a torn tail.
+    // Returns the number of batches replayed.
+    public static int replay(Path file, RecordConsumer consumer) throws IOException {
+        int batches = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            CRC32C checksum = new CRC32C();
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.getInt(0);
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + RECORD_HEADER_SIZE);
+                checksum.reset();
+                checksum.update(payload.array());
+                if ((int) checksum.getValue() != header.getInt(4)) {
+                    break;
+                }
+                decodeRecord(payload.array(), consumer);
+                position += RECORD_HEADER_SIZE + length;
+                batches++;
+            }
+            if (position < size) {
+                System.out.println("Discarding " + (size - position) + " bytes of incomplete log records in " + file.getFileName());
+                channel.truncate(position);
+                channel.force(false);
+            }
+        }
+        return batches;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+        }
+    }
+
+    public static byte[] encodeBatch(List<IndexRequest> documents) {
+        BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder(256 * documents.size());
+        encoder.writeByte(INDEX_RECORD);
+        encoder.writeVarLong(documents.size());
+        for (IndexRequest document : documents) {
+            encoder.writeVarLong(document.clientID);
+            encoder.writeString(document.documentPath);
+            encoder.writeVarLong(document.wordFrequencies.size());
+            for (Map.Entry<String, Long> entry : document.wordFrequencies.entrySet()) {
+                encoder.writeString(entry.getKey());
+                encoder.writeVarLong(entry.getValue());
+            }
+        }
+        return encoder.toByteArray();
+    }
+
+    public static void decodeRecord(byte[] payload, RecordConsumer consumer) {
+        BinaryProtocol.Decoder decoder = new BinaryProtocol.Decoder(payload);
+        int kind = decoder.readByte();
+        if (kind == DELETE_RECORD) {
+            int numPaths = decoder.readLength();
+            List<String> documentPaths = new ArrayList<>(numPaths);
+            for (int i = 0; i < numPaths; i++) {
+                documentPaths.add(decoder.readString());
+            }
+            consumer.delete(documentPaths);
+        } else if (kind == INDEX_RECORD) {
+            consumer.index(decodeDocuments(decoder));
+        } else {
+            throw new IllegalArgumentException("Unknown log record kind " + kind);
+        }
+    }
+
+    private static List<IndexRequest> decodeDocuments(BinaryProtocol.Decoder decoder) {
+        int numDocuments = decoder.readLength();
+        List<IndexRequest> documents = new ArrayList<>(numDocuments);
+        for (int i = 0; i < numDocuments; i++) {
+            long clientID = decoder.readVarLong();
+            String documentPath = decoder.readString();
+            int numTerms = decoder.readLength();
+            Map<String, Long> wordFrequencies = new HashMap<>(numTerms * 4 / 3 + 1);
+            for (int j = 0; j < numTerms; j++) {
+                String term = decoder.readString();
+                wordFrequencies.put(term, decoder.readVarLong());
+            }
+            documents.add(new IndexRequest(clientID, documentPath, wordFrequencies));
+        }
+        return documents;
+    }
+}
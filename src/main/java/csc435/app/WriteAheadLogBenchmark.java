@@ -0,0 +1,85 @@
+package csc435.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Measures logged index batch throughput for each write-ahead log durability level, with
+// several threads indexing concurrently the way server workers do.
+public class WriteAheadLogBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numBatches = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int documentsPerBatch = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        SyntheticCorpus corpus = new SyntheticCorpus(50000, 100);
+        List<List<IndexRequest>> batches = new ArrayList<>();
+        for (int i = 0; i < numBatches; i++) {
+            List<IndexRequest> batch = new ArrayList<>();
+            for (int j = 0; j < documentsPerBatch; j++) {
+                int docIndex = i * documentsPerBatch + j;
+                batch.add(new IndexRequest(1, "/bench/doc-" + docIndex, corpus.document(docIndex)));
+            }
+            batches.add(batch);
+        }
+
+        // Warm up the JIT before taking measurements
+        run(batches, numThreads, WriteAheadLog.Durability.NONE);
+
+        System.out.println("durability,threads,batches/sec,docs/sec,fsyncs");
+        for (WriteAheadLog.Durability durability : WriteAheadLog.Durability.values()) {
+            run(batches, numThreads, durability);
+        }
+    }
+
+    private static void run(List<List<IndexRequest>> batches, int numThreads, WriteAheadLog.Durability durability)
+            throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("wal-bench");
+        IndexStore store = new IndexStore(directory, durability);
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                int batchIndex;
+                while ((batchIndex = next.getAndIncrement()) < batches.size()) {
+                    store.updateIndexBatch(batches.get(batchIndex));
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        long fsyncs = store.getLogSyncCount();
+        int documents = batches.size() * batches.get(0).size();
+        System.out.printf("%s,%d,%.0f,%.0f,%d%n", durability.name().toLowerCase(), numThreads,
+                batches.size() / seconds, documents / seconds, fsyncs);
+
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
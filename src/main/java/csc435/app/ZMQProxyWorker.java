@@ -1,37 +1,239 @@
 package csc435.app;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
 
+// Forwards client requests to the workers over two lanes, each with its own worker pool:
+// index updates (and snapshots for followers) on one, searches and everything else on the
+// other, so that bulk indexing cannot queue up in front of searches. A lane with a queue
+// limit admits at most its workers plus that many outstanding requests; beyond that the
+// proxy answers at once with a busy reply, and clients wait and send the request again.
+// Each admitted request is stamped with the time it was queued, in a frame right after the
+// routing envelope, which the worker removes to measure how long the request waited.
 public class ZMQProxyWorker implements Runnable {
+    public static final String SEARCH_BACKEND = "inproc://backend";
+    public static final String INDEX_BACKEND = "inproc://backend-index";
+    public static final long RETRY_AFTER_MILLIS = 100;
+
+    // Admission state of one lane; the counters are read by the server console
+    public static class Lane {
+        public final String name;
+        public final int workers;
+        public final int queueLimit; // Negative: no limit
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private volatile int peakQueued;
+
+        public Lane(String name, int workers, int queueLimit) {
+            this.name = name;
+            this.workers = workers;
+            this.queueLimit = queueLimit;
+        }
+
+        // Requests admitted but not yet picked up by a worker
+        public int getQueued() {
+            return Math.max(0, outstanding.get() - workers);
+        }
+
+        public int getPeakQueued() {
+            return peakQueued;
+        }
+
+        public long getAccepted() {
+            return accepted.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        private boolean admit() {
+            if (queueLimit >= 0 && outstanding.get() >= workers + queueLimit) {
+                rejected.increment();
+                return false;
+            }
+            accepted.increment();
+            peakQueued = Math.max(peakQueued, Math.max(0, outstanding.incrementAndGet() - workers));
+            return true;
+        }
+
+        private void completed() {
+            outstanding.decrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s lane: %d workers, %d queued (peak %d, limit %s), %d accepted, %d rejected",
+                    name, workers, getQueued(), peakQueued, queueLimit < 0 ? "none" : String.valueOf(queueLimit),
+                    getAccepted(), getRejected());
+        }
+    }
+
     private final ZContext context;
     private final int serverPort;
+    private final Lane searchLane;
+    private final Lane indexLane; // Null: index updates share the search lane
 
-    public ZMQProxyWorker(ZContext context, int serverPort) {
+    public ZMQProxyWorker(ZContext context, int serverPort, Lane searchLane, Lane indexLane) {
         this.context = context;
         this.serverPort = serverPort;
+        this.searchLane = searchLane;
+        this.indexLane = indexLane;
     }
 
     @Override
     public void run() {
+        ZMQ.Socket router = context.createSocket(SocketType.ROUTER);
+        ZMQ.Socket searchDealer = context.createSocket(SocketType.DEALER);
+        ZMQ.Socket indexDealer = indexLane == null ? null : context.createSocket(SocketType.DEALER);
+        ZMQ.Socket control = context.createSocket(SocketType.SUB);
         try {
-            ZMQ.Socket router = context.createSocket(SocketType.ROUTER);
-            ZMQ.Socket dealer = context.createSocket(SocketType.DEALER);
-
             router.bind("tcp://*:" + serverPort);
-            dealer.bind("inproc://backend"); // Internal communication
+            // The lanes' own limits decide what queues; ZMQ's must not drop or block first
+            searchDealer.setSndHWM(0);
+            searchDealer.bind(SEARCH_BACKEND); // Internal communication
+            if (indexDealer != null) {
+                indexDealer.setSndHWM(0);
+                indexDealer.bind(INDEX_BACKEND);
+            }
+            control.connect(ServerProcessingEngine.CONTROL_ENDPOINT);
+            control.subscribe(ZMQ.SUBSCRIPTION_ALL);
 
             System.out.println("Proxy running on port " + serverPort);
 
+            ZMQ.Poller poller = context.createPoller(4);
+            int requests = poller.register(router, ZMQ.Poller.POLLIN);
+            int searchReplies = poller.register(searchDealer, ZMQ.Poller.POLLIN);
+            int indexReplies = indexDealer == null ? -1 : poller.register(indexDealer, ZMQ.Poller.POLLIN);
+            int controlIndex = poller.register(control, ZMQ.Poller.POLLIN);
+
+            // Runs until the engine publishes TERMINATE on the control socket
             while (!Thread.currentThread().isInterrupted()) {
-                ZMQ.proxy(router, dealer, null);
+                if (poller.poll(-1) < 0 || poller.pollin(controlIndex)) {
+                    break;
+                }
+                if (poller.pollin(searchReplies)) {
+                    forwardReplies(searchDealer, router, searchLane);
+                }
+                if (indexReplies >= 0 && poller.pollin(indexReplies)) {
+                    forwardReplies(indexDealer, router, indexLane);
+                }
+                if (poller.pollin(requests)) {
+                    ZMsg request;
+                    while ((request = ZMsg.recvMsg(router, ZMQ.DONTWAIT)) != null) {
+                        try {
+                            admit(request, router, searchDealer, indexDealer);
+                        } catch (RuntimeException e) {
+                            // A malformed request must not stop the proxy
+                            System.err.println("Proxy dropped a request: " + e);
+                        }
+                    }
+                }
             }
-
-            router.close();
-            dealer.close();
+            poller.close();
+        } catch (org.zeromq.ZMQException e) {
+            // Thrown if the context is closed while waiting
         } catch (Exception e) {
             System.err.println("Proxy error: " + e.getMessage());
+        } finally {
+            control.close();
+            router.close();
+            searchDealer.close();
+            if (indexDealer != null) {
+                indexDealer.close();
+            }
+        }
+    }
+
+    private static void forwardReplies(ZMQ.Socket dealer, ZMQ.Socket router, Lane lane) {
+        ZMsg reply;
+        while ((reply = ZMsg.recvMsg(dealer, ZMQ.DONTWAIT)) != null) {
+            lane.completed();
+            try {
+                reply.send(router);
+            } catch (RuntimeException e) {
+                System.err.println("Proxy dropped a reply: " + e);
+            }
+        }
+    }
+
+    private void admit(ZMsg request, ZMQ.Socket router, ZMQ.Socket searchDealer, ZMQ.Socket indexDealer) {
+        // The routing envelope ends with the empty delimiter frame; the request follows it
+        int envelopeSize = 0;
+        for (ZFrame frame : request) {
+            envelopeSize++;
+            if (frame.size() == 0) {
+                break;
+            }
+        }
+        boolean isIndexRequest = indexLane != null && isIndexRequest(request, envelopeSize);
+        Lane lane = isIndexRequest ? indexLane : searchLane;
+        if (lane.admit()) {
+            ZMsg stamped = new ZMsg();
+            for (int i = 0; i < envelopeSize; i++) {
+                stamped.add(request.pop());
+            }
+            stamped.add(ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).array());
+            while (!request.isEmpty()) {
+                stamped.add(request.pop());
+            }
+            stamped.send(isIndexRequest ? indexDealer : searchDealer);
+            return;
+        }
+
+        ZMsg reply = new ZMsg();
+        for (int i = 0; i < envelopeSize; i++) {
+            reply.add(request.pop());
+        }
+        byte[] first = request.isEmpty() ? new byte[0] : request.pop().getData();
+        if (BinaryProtocol.isBinary(first)) {
+            // A pipelining client needs the batch ID to know which batch to send again
+            long batchId = 0;
+            if (first[2] == BinaryProtocol.INDEX_BATCH_REQUEST && !request.isEmpty()) {
+                try {
+                    batchId = BinaryProtocol.decodeVarLong(request.pop().getData());
+                } catch (RuntimeException e) {
+                    // Malformed: the client cannot match the reply to a batch anyway
+                }
+            }
+            reply.add(BinaryProtocol.header(BinaryProtocol.BUSY_REPLY));
+            reply.add(BinaryProtocol.encodeBusyReply(batchId, RETRY_AFTER_MILLIS));
+        } else {
+            reply.add(TextProtocol.BUSY_REPLY);
+        }
+        request.destroy();
+        reply.send(router);
+    }
+
+    // How long ago the proxy queued the request whose time frame this is
+    public static long queuedNanos(byte[] queuedAt) {
+        return System.nanoTime() - ByteBuffer.wrap(queuedAt).getLong();
+    }
+
+    // Index updates, deletes and snapshots go to the index lane
+    private static boolean isIndexRequest(ZMsg request, int envelopeSize) {
+        int position = 0;
+        for (ZFrame frame : request) {
+            if (position++ < envelopeSize) {
+                continue;
+            }
+            byte[] first = frame.getData();
+            if (BinaryProtocol.isBinary(first)) {
+                byte type = first[2];
+                return type == BinaryProtocol.INDEX_REQUEST || type == BinaryProtocol.INDEX_BATCH_REQUEST
+                        || type == BinaryProtocol.DELETE_REQUEST || type == BinaryProtocol.SNAPSHOT_REQUEST;
+            }
+            String message = new String(first, 0, Math.min(first.length, 14), StandardCharsets.US_ASCII);
+            return message.startsWith("INDEX REQUEST") || message.startsWith("DELETE REQUEST");
         }
+        return false;
     }
 }